@@ -0,0 +1,23 @@
+package searchengine.config;
+
+/**
+ * Способ выполнения обхода сайтов.
+ */
+public enum CrawlEngine {
+
+    /**
+     * Страницы обрабатываются в собственном {@link java.util.concurrent.ForkJoinPool} сайта по
+     * числу ядер; разрешения на обработку ожидаются без блокировки потоков пула.
+     */
+    FORK_JOIN,
+
+    /**
+     * Каждая страница обрабатывается в отдельном виртуальном потоке.
+     */
+    VIRTUAL_THREADS,
+
+    /**
+     * Конвейер из стадий загрузки, разбора, лемматизации и сохранения с ограниченными очередями.
+     */
+    PIPELINE
+}
@@ -0,0 +1,107 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "indexing-settings.crawler")
+public class CrawlerConfiguration {
+
+    private CrawlEngine engine = CrawlEngine.FORK_JOIN;
+    private int dbConcurrency = 5;
+    private boolean incremental = false;
+    private int wordFormCacheCapacity = 200_000;
+    private boolean positionalIndex = false;
+    private Pipeline pipeline = new Pipeline();
+    private BulkWriter bulkWriter = new BulkWriter();
+    private Frontier frontier = new Frontier();
+    private Checkpoint checkpoint = new Checkpoint();
+    private Scheduler scheduler = new Scheduler();
+    private NearDuplicate nearDuplicate = new NearDuplicate();
+
+    /**
+     * Размеры стадий конвейера обхода. Очередь загрузки не ограничена: в неё пишет стадия
+     * разбора, и ограничение замкнуло бы стадии в цикл ожидания.
+     */
+    @Getter
+    @Setter
+    public static class Pipeline {
+
+        private int fetchThreads = 32;
+        private int parseThreads = Runtime.getRuntime().availableProcessors();
+        private int parseQueueCapacity = 64;
+        private int lemmatizeThreads = Runtime.getRuntime().availableProcessors();
+        private int lemmatizeQueueCapacity = 64;
+        private int persistThreads = 4;
+        private int persistQueueCapacity = 128;
+        private int persistBatchSize = 16;
+    }
+
+    /**
+     * Пакетная запись строк индекса: строки копятся в буфере и записываются, когда их набирается
+     * {@code batchRows} или проходит {@code flushInterval} миллисекунд. Идентификаторы новых
+     * лемм резервируются в таблице id_sequence диапазонами по {@code idAllocationSize}.
+     */
+    @Getter
+    @Setter
+    public static class BulkWriter {
+
+        private int batchRows = 5000;
+        private long flushInterval = 1000;
+        private int idAllocationSize = 1000;
+    }
+
+    /**
+     * Множество посещённых адресов сайта. По умолчанию точное; фильтр Блума рассчитывается на
+     * {@code expectedUrls} адресов с долей ложных совпадений {@code falsePositiveRate}.
+     */
+    @Getter
+    @Setter
+    public static class Frontier {
+
+        private boolean bloomFilter = false;
+        private long expectedUrls = 1_000_000;
+        private double falsePositiveRate = 0.001;
+    }
+
+    /**
+     * Контрольные точки обхода: состояние множества адресов каждого сайта записывается в
+     * {@code directory} раз в {@code interval} миллисекунд и при остановке индексации.
+     */
+    @Getter
+    @Setter
+    public static class Checkpoint {
+
+        private boolean enabled = true;
+        private String directory = "data/checkpoints";
+        private long interval = 60000;
+    }
+
+    /**
+     * Общий бюджет обхода: не более {@code globalConcurrency} страниц всех сайтов
+     * обрабатываются одновременно. Бюджет делится между сайтами по их весу и приоритету.
+     */
+    @Getter
+    @Setter
+    public static class Scheduler {
+
+        private int globalConcurrency = 64;
+    }
+
+    /**
+     * Поиск почти одинаковых страниц сайта: страница, отпечаток SimHash которой отличается от
+     * отпечатка проиндексированной страницы не более чем в {@code maxDistance} битах,
+     * сохраняется как её копия и не индексируется.
+     */
+    @Getter
+    @Setter
+    public static class NearDuplicate {
+
+        private boolean enabled = true;
+        private int maxDistance = 3;
+    }
+}
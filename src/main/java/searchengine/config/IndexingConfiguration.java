@@ -14,4 +14,5 @@ public class IndexingConfiguration {
     private String userAgent;
     private String referrer;
     private int timeout;
+    private int hostConcurrency = 1;
 }
@@ -0,0 +1,20 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "search-settings")
+public class SearchConfiguration {
+
+    private long cacheMaxWeight = 16_777_216;
+    private int stopLemmaCapacity = 4096;
+    private long timeout = 3000;
+    private boolean segmentsEnabled = true;
+    private String segmentDirectory = "data/segments";
+    private long segmentCacheMaxWeight = 67_108_864;
+}
@@ -9,4 +9,16 @@ public class Site {
 
     private String url;
     private String name;
+    /**
+     * Доля сайта в общем бюджете одновременно обрабатываемых страниц относительно других сайтов.
+     */
+    private int weight = 1;
+    /**
+     * Сайты с большим приоритетом получают разрешения раньше остальных.
+     */
+    private int priority = 0;
+    /**
+     * Наибольшее число одновременно обрабатываемых страниц сайта; 0 — без ограничения.
+     */
+    private int maxConcurrency = 0;
 }
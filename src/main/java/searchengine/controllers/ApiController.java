@@ -1,6 +1,7 @@
 package searchengine.controllers;
 
 import java.net.URISyntaxException;
+import java.util.List;
 import javax.validation.constraints.NotEmpty;
 import javax.validation.constraints.Positive;
 import javax.validation.constraints.PositiveOrZero;
@@ -13,6 +14,7 @@ import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.server.ResponseStatusException;
 import searchengine.dto.indexing.IndexingResponse;
+import searchengine.dto.indexing.PipelineStageStatus;
 import searchengine.dto.search.SearchResponse;
 import searchengine.dto.statistics.StatisticsResponse;
 import searchengine.services.IndexingService;
@@ -23,6 +25,13 @@ import searchengine.services.StatisticsService;
 @RequestMapping("/api")
 public class ApiController {
 
+    private static final int MAX_SEARCH_LIMIT = 100;
+    /**
+     * Без курсора ранжируются все страницы до конца окна выдачи, поэтому глубина выдачи по
+     * смещению ограничена; дальше выдачу листают курсором.
+     */
+    private static final int MAX_SEARCH_OFFSET = 10_000;
+
     private final StatisticsService statisticsService;
     private final IndexingService indexingService;
     private final SearchService searchService;
@@ -53,6 +62,18 @@ public class ApiController {
         return indexingService.stopIndexing();
     }
 
+    @GetMapping("/resumeIndexing")
+    @ResponseStatus(HttpStatus.OK)
+    public IndexingResponse resumeIndexing() {
+        return indexingService.resumeIndexing();
+    }
+
+    @GetMapping("/pipeline")
+    @ResponseStatus(HttpStatus.OK)
+    public List<PipelineStageStatus> getPipelineStatus() {
+        return indexingService.getPipelineStatus();
+    }
+
     @PostMapping("/indexPage")
     @ResponseStatus(HttpStatus.OK)
     public IndexingResponse indexPage(@RequestParam @NotEmpty String url)
@@ -67,11 +88,12 @@ public class ApiController {
     public SearchResponse search(
         @RequestParam @NotEmpty String query,
         @RequestParam(required = false) String site,
-        @RequestParam @PositiveOrZero int offset,
-        @RequestParam @Positive int limit
+        @RequestParam(defaultValue = "0") @PositiveOrZero int offset,
+        @RequestParam @Positive int limit,
+        @RequestParam(required = false) String cursor
     ) {
         validateSearchParams(query, offset, limit);
-        return searchService.search(query, site, offset, limit);
+        return searchService.search(query, site, offset, limit, cursor);
     }
 
     private void validateUrl(String url) throws URISyntaxException {
@@ -79,10 +101,16 @@ public class ApiController {
     }
 
     private void validateSearchParams(String query, int offset, int limit) {
-        if (limit > 100) {
+        if (limit > MAX_SEARCH_LIMIT) {
             throw new ResponseStatusException(
                 HttpStatus.BAD_REQUEST,
-                "Превышен максимальный лимит результатов (100)"
+                "Превышен максимальный лимит результатов (" + MAX_SEARCH_LIMIT + ")"
+            );
+        }
+        if (limit < 1) {
+            throw new ResponseStatusException(
+                HttpStatus.BAD_REQUEST,
+                "Лимит результатов должен быть положительным"
             );
         }
         if (offset < 0) {
@@ -91,5 +119,12 @@ public class ApiController {
                 "Смещение не может быть отрицательным"
             );
         }
+        if (offset > MAX_SEARCH_OFFSET) {
+            throw new ResponseStatusException(
+                HttpStatus.BAD_REQUEST,
+                "Превышено максимальное смещение (" + MAX_SEARCH_OFFSET
+                    + "), используйте курсор"
+            );
+        }
     }
 }
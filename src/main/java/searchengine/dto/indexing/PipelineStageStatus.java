@@ -0,0 +1,18 @@
+package searchengine.dto.indexing;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Состояние стадии конвейера обхода: заполненность очереди и занятость потоков.
+ */
+@Getter
+@Setter
+public class PipelineStageStatus {
+
+    private String stage;
+    private int queued;
+    private int capacity;
+    private int threads;
+    private int busyThreads;
+}
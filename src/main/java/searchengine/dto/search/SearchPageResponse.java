@@ -0,0 +1,20 @@
+package searchengine.dto.search;
+
+import java.util.ArrayList;
+import java.util.List;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Ответ поиска с признаком неполной выдачи: сайты, не успевшие ответить до истечения времени
+ * запроса, перечислены в {@code unavailableSites}. Курсор {@code cursor} продолжает выдачу со
+ * следующей страницы и отсутствует, если результатов больше нет.
+ */
+@Getter
+@Setter
+public class SearchPageResponse extends SearchResponse {
+
+    private boolean partial;
+    private List<String> unavailableSites = new ArrayList<>();
+    private String cursor;
+}
@@ -27,6 +27,12 @@ public class DefaultExceptionHandler {
         return new ResponseEntity<>(response, HttpStatus.CONFLICT);
     }
 
+    @ExceptionHandler(IndexingNoCheckpointException.class)
+    public ResponseEntity<ErrorResponse> handleException(IndexingNoCheckpointException ex) {
+        ErrorResponse response = new ErrorResponse(ex.getMessage());
+        return new ResponseEntity<>(response, HttpStatus.CONFLICT);
+    }
+
     @ExceptionHandler(IndexingOutsideSitesException.class)
     public ResponseEntity<ErrorResponse> handleException(IndexingOutsideSitesException ex) {
         ErrorResponse response = new ErrorResponse(ex.getMessage());
@@ -51,6 +57,12 @@ public class DefaultExceptionHandler {
         return new ResponseEntity<>(response, HttpStatus.CONFLICT);
     }
 
+    @ExceptionHandler(SearchInvalidCursorException.class)
+    public ResponseEntity<ErrorResponse> handleException(SearchInvalidCursorException ex) {
+        ErrorResponse response = new ErrorResponse(ex.getMessage());
+        return new ResponseEntity<>(response, HttpStatus.BAD_REQUEST);
+    }
+
     @ExceptionHandler(SearchQueryTooExtensiveException.class)
     public ResponseEntity<ErrorResponse> handleException(SearchQueryTooExtensiveException ex) {
         ErrorResponse response = new ErrorResponse(ex.getMessage());
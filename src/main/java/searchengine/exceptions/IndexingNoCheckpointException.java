@@ -0,0 +1,8 @@
+package searchengine.exceptions;
+
+public class IndexingNoCheckpointException extends RuntimeException {
+
+    public IndexingNoCheckpointException() {
+        super("Нет сохранённого обхода для продолжения индексации");
+    }
+}
@@ -0,0 +1,8 @@
+package searchengine.exceptions;
+
+public class SearchInvalidCursorException extends RuntimeException {
+
+    public SearchInvalidCursorException() {
+        super("Некорректный курсор постраничной выдачи");
+    }
+}
@@ -9,6 +9,7 @@ import jakarta.persistence.ForeignKey;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
 import jakarta.persistence.Table;
@@ -17,7 +18,8 @@ import lombok.NonNull;
 import lombok.Setter;
 
 @Entity
-@Table(name = "indexing")
+@Table(name = "indexing", indexes = {@Index(name = "idx_indexing_lemma_page_rating",
+    columnList = "lemma_id, page_id, rating")})
 @Getter
 @Setter
 public class IndexEntity {
@@ -38,4 +40,7 @@ public class IndexEntity {
     @JoinColumn(name = "page_id", foreignKey = @ForeignKey(ConstraintMode.CONSTRAINT))
     private PageEntity pageId;
 
+    @Column(name = "positions", columnDefinition = "MEDIUMBLOB")
+    private byte[] positions;
+
 }
\ No newline at end of file
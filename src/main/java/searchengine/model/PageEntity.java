@@ -9,18 +9,19 @@ import jakarta.persistence.ForeignKey;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
-import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
 import jakarta.persistence.OneToMany;
 import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
 import java.util.List;
 import lombok.Getter;
 import lombok.NonNull;
 import lombok.Setter;
 
 @Entity
-@Table(name = "page", indexes = {@Index(name = "idx_path", columnList = "path(100)")})
+@Table(name = "page", uniqueConstraints = {@UniqueConstraint(name = "uk_page_site_path_hash",
+    columnNames = {"site_id", "path_hash"})})
 @Getter
 @Setter
 public class PageEntity {
@@ -33,10 +34,17 @@ public class PageEntity {
     @JoinColumn(name = "site_id", foreignKey = @ForeignKey(ConstraintMode.CONSTRAINT), nullable = false)
     private SiteEntity siteId;
 
-    @Column(name = "path", nullable = false, columnDefinition = "TEXT", unique = true)
+    @Column(name = "path", nullable = false, columnDefinition = "TEXT")
     @NonNull
     private String path;
 
+    /**
+     * MD5 пути, вычисляемый СУБД из колонки path.
+     */
+    @Column(name = "path_hash", columnDefinition = "BINARY(16)", insertable = false,
+        updatable = false)
+    private byte[] pathHash;
+
     @Column(name = "code", nullable = false, columnDefinition = "INT")
     @NonNull
     private Integer code;
@@ -45,6 +53,27 @@ public class PageEntity {
     @NonNull
     private String content;
 
+    @Column(name = "title", columnDefinition = "TEXT")
+    private String title;
+
+    @Column(name = "text", columnDefinition = "MEDIUMTEXT")
+    private String text;
+
+    @Column(name = "etag", columnDefinition = "VARCHAR(255)")
+    private String etag;
+
+    @Column(name = "last_modified", columnDefinition = "VARCHAR(64)")
+    private String lastModified;
+
+    @Column(name = "content_hash")
+    private Long contentHash;
+
+    @Column(name = "simhash")
+    private Long simhash;
+
+    @Column(name = "duplicate_of")
+    private Long duplicateOf;
+
     @OneToMany(mappedBy = "id", cascade = CascadeType.ALL, fetch = FetchType.LAZY, orphanRemoval = true)
     private List<IndexEntity> indexEntityList;
 }
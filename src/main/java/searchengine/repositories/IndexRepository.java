@@ -1,14 +1,41 @@
 package searchengine.repositories;
 
+import java.util.Collection;
 import java.util.List;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import searchengine.model.IndexEntity;
+import searchengine.repositories.projections.LemmaProjection;
+import searchengine.repositories.projections.PositionsProjection;
+import searchengine.repositories.projections.PostingProjection;
 
 @Repository
 public interface IndexRepository extends JpaRepository<IndexEntity, Long> {
 
-    @Query(value = "SELECT * FROM `indexing` WHERE lemma_id = :lemmaId", nativeQuery = true)
-    List<IndexEntity> findByLemmaId(Long lemmaId);
+    @Query(value = "SELECT i.lemma_id AS lemmaId, i.page_id AS pageId, i.rating AS rating "
+        + "FROM `indexing` i JOIN lemma l ON l.id = i.lemma_id "
+        + "WHERE l.site_id = :siteId ORDER BY i.page_id", nativeQuery = true)
+    List<PostingProjection> findPostingsBySiteId(Long siteId);
+
+    @Query(value = "SELECT l.id AS id, l.lemma AS lemma, l.frequency AS frequency "
+        + "FROM `indexing` i JOIN lemma l ON l.id = i.lemma_id WHERE i.page_id = :pageId", nativeQuery = true)
+    List<LemmaProjection> findLemmasByPageId(Long pageId);
+
+    @Query(value = "SELECT i.page_id AS pageId, i.lemma_id AS lemmaId, i.positions AS positions "
+        + "FROM `indexing` i WHERE i.lemma_id IN (:lemmaIds) AND i.page_id IN (:pageIds)", nativeQuery = true)
+    List<PositionsProjection> findPositions(Collection<Long> lemmaIds, Collection<Long> pageIds);
+
+    @Query(value = "SELECT i.page_id AS pageId, i.lemma_id AS lemmaId, i.positions AS positions "
+        + "FROM `indexing` i JOIN lemma l ON l.id = i.lemma_id "
+        + "WHERE i.page_id IN (:pageIds) AND l.lemma IN (:lemmas)", nativeQuery = true)
+    List<PositionsProjection> findPositionsByLemmas(Collection<Long> pageIds,
+        Collection<String> lemmas);
+
+    @Transactional
+    @Modifying
+    @Query(value = "DELETE FROM `indexing` WHERE page_id = :pageId", nativeQuery = true)
+    void deleteByPageId(Long pageId);
 }
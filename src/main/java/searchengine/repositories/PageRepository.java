@@ -1,15 +1,25 @@
 package searchengine.repositories;
 
+import java.util.Collection;
+import java.util.List;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 import searchengine.model.PageEntity;
+import searchengine.repositories.projections.PageSummaryProjection;
+import searchengine.repositories.projections.StoredPageProjection;
 
 @Repository
 public interface PageRepository extends JpaRepository<PageEntity, Long> {
 
-    @Query(value = "SELECT id FROM page WHERE path LIKE :url AND site_id = :siteId", nativeQuery = true)
-    Long findPageIdByUrlSiteId(String url, Long siteId);
+    @Query(value = "SELECT id, path, etag, last_modified AS lastModified, content_hash AS contentHash, "
+        + "simhash, duplicate_of AS duplicateOf FROM page WHERE site_id = :siteId", nativeQuery = true)
+    List<StoredPageProjection> findStoredPagesBySiteId(Long siteId);
+
+    @Query(value = "SELECT id, path, etag, last_modified AS lastModified, content_hash AS contentHash, "
+        + "simhash, duplicate_of AS duplicateOf FROM page WHERE site_id = :siteId "
+        + "AND path_hash = UNHEX(MD5(:path)) AND path = :path", nativeQuery = true)
+    StoredPageProjection findStoredPage(Long siteId, String path);
 
     @Query(value = "SELECT COUNT(*) FROM page", nativeQuery = true)
     Integer getSizePages();
@@ -17,5 +27,9 @@ public interface PageRepository extends JpaRepository<PageEntity, Long> {
     @Query(value = "SELECT COUNT(*) FROM page WHERE site_id = :siteId", nativeQuery = true)
     Integer getSizePagesBySiteId(Long siteId);
 
+    @Query(value = "SELECT p.id AS id, p.path AS path, s.name AS siteName, p.title AS title, "
+        + "p.text AS text FROM page p JOIN site s ON s.id = p.site_id WHERE p.id IN (:pageIds)", nativeQuery = true)
+    List<PageSummaryProjection> findSummariesByIds(Collection<Long> pageIds);
+
 }
 
@@ -1,21 +1,29 @@
 package searchengine.repositories;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import searchengine.model.SiteEntity;
 
 @Repository
 public interface SiteRepository extends JpaRepository<SiteEntity, Long> {
 
-    @Query(value = "SELECT * FROM site WHERE name LIKE :siteName", nativeQuery = true)
+    @Query(value = "SELECT * FROM site WHERE name = :siteName", nativeQuery = true)
     List<SiteEntity> findSiteByName(String siteName);
 
-    @Query(value = "SELECT * FROM site WHERE url LIKE :siteUrl", nativeQuery = true)
+    @Query(value = "SELECT * FROM site WHERE url = :siteUrl", nativeQuery = true)
     SiteEntity findSiteByUrl(String siteUrl);
 
     @Query(value = "SELECT * FROM site", nativeQuery = true)
     List<SiteEntity> getAllSite();
+
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE site SET status_time = :statusTime WHERE id = :siteId", nativeQuery = true)
+    void updateStatusTime(Long siteId, LocalDateTime statusTime);
 }
 
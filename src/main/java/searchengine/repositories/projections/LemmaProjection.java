@@ -0,0 +1,10 @@
+package searchengine.repositories.projections;
+
+public interface LemmaProjection {
+
+    Long getId();
+
+    String getLemma();
+
+    Integer getFrequency();
+}
@@ -0,0 +1,14 @@
+package searchengine.repositories.projections;
+
+public interface PageSummaryProjection {
+
+    Long getId();
+
+    String getPath();
+
+    String getSiteName();
+
+    String getTitle();
+
+    String getText();
+}
@@ -0,0 +1,10 @@
+package searchengine.repositories.projections;
+
+public interface PositionsProjection {
+
+    Long getPageId();
+
+    Long getLemmaId();
+
+    byte[] getPositions();
+}
@@ -0,0 +1,10 @@
+package searchengine.repositories.projections;
+
+public interface PostingProjection {
+
+    Long getLemmaId();
+
+    Long getPageId();
+
+    Float getRating();
+}
@@ -0,0 +1,18 @@
+package searchengine.repositories.projections;
+
+public interface StoredPageProjection {
+
+    Long getId();
+
+    String getPath();
+
+    String getEtag();
+
+    String getLastModified();
+
+    Long getContentHash();
+
+    Long getSimhash();
+
+    Long getDuplicateOf();
+}
@@ -1,6 +1,8 @@
 package searchengine.services;
 
+import java.util.List;
 import searchengine.dto.indexing.IndexingResponse;
+import searchengine.dto.indexing.PipelineStageStatus;
 
 public interface IndexingService {
 
@@ -8,5 +10,9 @@ public interface IndexingService {
 
     IndexingResponse stopIndexing();
 
+    IndexingResponse resumeIndexing();
+
     IndexingResponse indexPage(String url);
+
+    List<PipelineStageStatus> getPipelineStatus();
 }
@@ -7,16 +7,28 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import searchengine.config.CrawlerConfiguration;
 import searchengine.config.Site;
 import searchengine.config.SitesList;
 import searchengine.dto.indexing.IndexingResponse;
+import searchengine.dto.indexing.PipelineStageStatus;
 import searchengine.exceptions.IndexingAlreadyStartedException;
+import searchengine.exceptions.IndexingNoCheckpointException;
 import searchengine.exceptions.IndexingNotStartedException;
 import searchengine.exceptions.IndexingOutsideSitesException;
 import searchengine.model.SiteEntity;
 import searchengine.model.Status;
 import searchengine.repositories.SiteRepository;
+import searchengine.services.components.CrawlCheckpointer;
+import searchengine.services.components.CrawlPipeline;
+import searchengine.services.components.IndexBulkWriter;
+import searchengine.services.components.IndexSegmentStore;
+import searchengine.services.components.InvertedIndex;
+import searchengine.services.components.LemmaDictionary;
+import searchengine.services.components.NearDuplicateIndex;
 import searchengine.services.components.SiteParser;
+import searchengine.services.components.StopLemmaTracker;
+import searchengine.services.components.UrlFrontier;
 
 @Slf4j
 @Service
@@ -24,11 +36,29 @@ import searchengine.services.components.SiteParser;
 public class IndexingServiceImpl implements IndexingService {
 
     private final SitesList sites;
+
+    private final CrawlerConfiguration crawlerConfiguration;
     @Autowired
     private final SiteRepository siteRepository;
 
     private final SiteParser siteParser;
 
+    private final InvertedIndex invertedIndex;
+
+    private final LemmaDictionary lemmaDictionary;
+
+    private final StopLemmaTracker stopLemmaTracker;
+
+    private final IndexSegmentStore indexSegmentStore;
+
+    private final CrawlPipeline crawlPipeline;
+
+    private final IndexBulkWriter indexBulkWriter;
+
+    private final CrawlCheckpointer crawlCheckpointer;
+
+    private final NearDuplicateIndex nearDuplicateIndex;
+
     @Transactional
     @Override
     public IndexingResponse startIndexing() {
@@ -40,9 +70,18 @@ public class IndexingServiceImpl implements IndexingService {
             List<Site> sitesList = sites.getSites();
 
             for (Site site : sitesList) {
-                cleanUpExistingData(site.getName());
-                SiteEntity siteEntity = createSite(site);
+                SiteEntity siteEntity = crawlerConfiguration.isIncremental()
+                    ? findIndexedSite(site) : null;
+                if (siteEntity == null) {
+                    cleanUpExistingData(site.getName());
+                    siteEntity = createSite(site);
+                } else {
+                    siteEntity.setStatus(Status.INDEXING);
+                    siteEntity.setStatusTime(LocalDateTime.now());
+                    siteEntity.setLastError(null);
+                }
                 siteRepository.saveAndFlush(siteEntity);
+                stopLemmaTracker.registerSite(siteEntity.getId());
                 siteParser.parseSite(siteEntity);
             }
 
@@ -53,9 +92,27 @@ public class IndexingServiceImpl implements IndexingService {
         }
     }
 
+    /**
+     * Метод находит ранее проиндексированный сайт для инкрементального обхода или продолжения
+     * обхода: его страницы не удаляются.
+     */
+    private SiteEntity findIndexedSite(Site site) {
+        List<SiteEntity> existingSites = siteRepository.findSiteByName(site.getName());
+        return existingSites.size() == 1 ? existingSites.get(0) : null;
+    }
+
     private void cleanUpExistingData(String siteName) {
         List<SiteEntity> existingSites = siteRepository.findSiteByName(siteName);
         if (!existingSites.isEmpty()) {
+            existingSites.forEach(site -> {
+                invertedIndex.evictSite(site.getId());
+                lemmaDictionary.evictSite(site.getId());
+                stopLemmaTracker.evictSite(site.getId());
+                indexSegmentStore.delete(site.getId());
+                indexBulkWriter.discardSite(site.getId());
+                crawlCheckpointer.delete(site.getId());
+                nearDuplicateIndex.evictSite(site.getId());
+            });
             siteRepository.deleteAll(existingSites);
         }
     }
@@ -69,6 +126,37 @@ public class IndexingServiceImpl implements IndexingService {
         return createPositiveResponse();
     }
 
+    /**
+     * Метод продолжает прерванные обходы сайтов с сохранёнными контрольными точками. Данные
+     * сайтов не удаляются, а уже проиндексированные страницы повторно не загружаются.
+     *
+     * @throws IndexingNoCheckpointException если ни для одного сайта нет контрольной точки
+     */
+    @Override
+    public IndexingResponse resumeIndexing() {
+        if (siteParser.isIndexing()) {
+            throw new IndexingAlreadyStartedException();
+        }
+        boolean resumed = false;
+        for (Site site : sites.getSites()) {
+            SiteEntity siteEntity = findIndexedSite(site);
+            UrlFrontier frontier = siteEntity == null ? null : crawlCheckpointer.load(siteEntity);
+            if (frontier == null) {
+                continue;
+            }
+            siteEntity.setStatus(Status.INDEXING);
+            siteEntity.setStatusTime(LocalDateTime.now());
+            siteEntity.setLastError(null);
+            siteRepository.saveAndFlush(siteEntity);
+            siteParser.resumeSite(siteEntity, frontier);
+            resumed = true;
+        }
+        if (!resumed) {
+            throw new IndexingNoCheckpointException();
+        }
+        return createPositiveResponse();
+    }
+
     @Override
     public IndexingResponse indexPage(String url) {
         if (siteParser.isIndexing()) {
@@ -85,6 +173,7 @@ public class IndexingServiceImpl implements IndexingService {
         if (siteEntity == null) {
             siteEntity = createSite(site);
             siteRepository.saveAndFlush(siteEntity);
+            stopLemmaTracker.registerSite(siteEntity.getId());
         }
 
         siteParser.parseSite(siteEntity);
@@ -97,6 +186,11 @@ public class IndexingServiceImpl implements IndexingService {
         return createPositiveResponse();
     }
 
+    @Override
+    public List<PipelineStageStatus> getPipelineStatus() {
+        return crawlPipeline.getStatus();
+    }
+
     private SiteEntity createSite(Site siteConfig) {
         SiteEntity siteEntity = new SiteEntity();
         String siteUrl = siteConfig.getUrl();
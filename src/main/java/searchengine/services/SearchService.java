@@ -4,5 +4,5 @@ import searchengine.dto.search.SearchResponse;
 
 public interface SearchService {
 
-    SearchResponse search(String query, String site, int offset, int limit);
+    SearchResponse search(String query, String site, int offset, int limit, String cursor);
 }
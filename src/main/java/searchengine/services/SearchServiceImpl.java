@@ -1,35 +1,49 @@
 package searchengine.services;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.lucene.morphology.LuceneMorphology;
 import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import searchengine.config.CrawlerConfiguration;
 import searchengine.dto.search.DataSearchItem;
+import searchengine.dto.search.SearchPageResponse;
 import searchengine.dto.search.SearchResponse;
 import searchengine.exceptions.SearchEmptyTermException;
 import searchengine.exceptions.SearchNoReadyIndexException;
 import searchengine.exceptions.SearchQueryTooExtensiveException;
-import searchengine.model.IndexEntity;
-import searchengine.model.LemmaEntity;
 import searchengine.model.PageEntity;
 import searchengine.model.SiteEntity;
-import searchengine.repositories.IndexRepository;
-import searchengine.repositories.LemmaRepository;
 import searchengine.repositories.PageRepository;
 import searchengine.repositories.SiteRepository;
+import searchengine.repositories.projections.PageSummaryProjection;
+import searchengine.services.components.IndexGeneration;
+import searchengine.services.components.InvertedIndex;
+import searchengine.services.components.LemmaDictionary;
+import searchengine.services.components.LemmaInfo;
+import searchengine.services.components.MergedRanking;
 import searchengine.services.components.Morphology;
+import searchengine.services.components.PageIdBitmap;
+import searchengine.services.components.PhraseQuery;
+import searchengine.services.components.PositionalIndexReader;
+import searchengine.services.components.PostingList;
+import searchengine.services.components.RankedPages;
+import searchengine.services.components.SearchCacheKey;
+import searchengine.services.components.SearchCursor;
+import searchengine.services.components.SearchResultCache;
+import searchengine.services.components.SiteSearchExecutor;
+import searchengine.services.components.StopLemmaTracker;
+import searchengine.services.components.TopPagesCollector;
+import searchengine.services.components.WordFormCache;
 
 @Slf4j
 @Service
@@ -41,45 +55,137 @@ public class SearchServiceImpl implements SearchService {
     @Autowired
     private final PageRepository pageRepository;
     @Autowired
-    private final LemmaRepository lemmaRepository;
+    private final InvertedIndex invertedIndex;
     @Autowired
-    private final IndexRepository indexRepository;
+    private final LemmaDictionary lemmaDictionary;
     @Autowired
-    LuceneMorphology luceneMorphology;
-    private static final double EXCLUDE_TOP_LEMMAS_PERCENT = 0.001;
+    private final SearchResultCache searchResultCache;
+    @Autowired
+    private final IndexGeneration indexGeneration;
+    @Autowired
+    private final StopLemmaTracker stopLemmaTracker;
+    @Autowired
+    private final SiteSearchExecutor siteSearchExecutor;
+    @Autowired
+    private final WordFormCache wordFormCache;
+    @Autowired
+    private final PositionalIndexReader positionalIndexReader;
+    @Autowired
+    private final CrawlerConfiguration crawlerConfiguration;
 
+    /**
+     * Метод выполняет поиск и отдаёт окно выдачи. Если передан курсор, окно начинается сразу
+     * после последней отданной страницы: при совпадении поколения индекса оно берётся из
+     * закэшированного ранжирования, иначе отбираются только {@code limit} страниц, следующих за
+     * курсором, без повторного ранжирования всех предыдущих.
+     *
+     * <p>Запрос в кавычках при включённом позиционном индексе ищется как фраза.
+     */
     @Transactional
     @Override
-    public SearchResponse search(String query, String site, int offset, int limit) {
+    public SearchResponse search(String query, String site, int offset, int limit,
+        String cursor) {
+        Morphology morphology = new Morphology(wordFormCache);
+        PhraseQuery phrase = crawlerConfiguration.isPositionalIndex()
+            ? PhraseQuery.parse(query, morphology) : null;
         query = query.replaceAll("[^А-яа-я\\s]", "");
         if (query.isBlank()) {
             throw new SearchEmptyTermException();
         }
         List<SiteEntity> siteEntities = findSiteEntity(site);
-        List<String> queryLemmas = new Morphology(luceneMorphology).collectLemmas(query)
-            .keySet()
-            .stream()
-            .toList();
-        queryLemmas = excludeTopLemmas(queryLemmas);
+        List<String> queryLemmas = morphology.collectLemmas(query).lemmas();
+        queryLemmas = excludeTopLemmas(queryLemmas,
+            site == null ? null : siteEntities.getFirst().getId());
         if (queryLemmas.isEmpty()) {
             throw new SearchQueryTooExtensiveException();
         }
-        Map<Long, Float> pageIdsRanks = new HashMap<>();
-        for (SiteEntity siteEntity : siteEntities) {
-            List<LemmaEntity> lemmaEntities = convertToLemmaEntity(queryLemmas,
-                siteEntity.getId());
-            lemmaEntities.sort(Comparator.comparing(LemmaEntity::getFrequency));
-            pageIdsRanks.putAll(collectPageIdRank(lemmaEntities));
+        if (phrase != null) {
+            phrase = phrase.retain(queryLemmas);
         }
-        if (pageIdsRanks.isEmpty()) {
-            SearchResponse searchResponse = new SearchResponse();
+        SearchCursor after = cursor == null ? null : SearchCursor.decode(cursor);
+        if (after != null) {
+            offset = after.offset();
+        }
+        SearchCacheKey cacheKey = SearchCacheKey.of(queryLemmas, site, phrase);
+        long generation = indexGeneration.current();
+        SearchResultCache.Entry cached = searchResultCache.get(cacheKey, generation);
+        RankedPages rankedPages = cached == null ? null : cached.getRankedPages();
+        List<DataSearchItem> data = cached == null ? null : cached.getWindow(offset, limit);
+        List<String> unavailableSites = List.of();
+        int start = offset;
+        boolean cacheable;
+        if (after != null && (rankedPages == null || after.generation() != generation
+            || !rankedPages.continues(after) || !rankedPages.covers(offset + limit))) {
+            MergedRanking mergedRanking = rankPages(siteEntities, queryLemmas, phrase, limit,
+                after);
+            rankedPages = mergedRanking.rankedPages();
+            unavailableSites = mergedRanking.unavailableSites();
+            data = null;
+            start = 0;
+            cacheable = false;
+        } else {
+            if (rankedPages == null || !rankedPages.covers(offset + limit)) {
+                MergedRanking mergedRanking = rankPages(siteEntities, queryLemmas, phrase,
+                    offset + limit, null);
+                rankedPages = mergedRanking.rankedPages();
+                unavailableSites = mergedRanking.unavailableSites();
+            }
+            cacheable = unavailableSites.isEmpty();
+        }
+        if (rankedPages.totalCount() == 0) {
+            if (cacheable) {
+                searchResultCache.put(cacheKey, generation, rankedPages, offset, limit,
+                    List.of());
+            }
+            SearchPageResponse searchResponse = new SearchPageResponse();
             searchResponse.setResult(true);
+            setUnavailableSites(searchResponse, unavailableSites);
             return searchResponse;
         }
-        Map<PageEntity, Float> pageModelsRelevance = calculateRelevance(pageIdsRanks, offset,
-            limit);
+        if (data == null) {
+            Map<PageSummaryProjection, Float> pageModelsRelevance = calculateRelevance(
+                rankedPages, start, limit);
+            data = createSearchItems(pageModelsRelevance, queryLemmas);
+            if (cacheable) {
+                searchResultCache.put(cacheKey, generation, rankedPages, offset, limit, data);
+            }
+        }
+        SearchPageResponse searchResponse = createPositiveResponse(data,
+            rankedPages.totalCount(), unavailableSites);
+        searchResponse.setCursor(
+            createNextCursor(rankedPages, start, offset, limit, generation));
+        return searchResponse;
+    }
 
-        return createPositiveResponse(pageModelsRelevance, queryLemmas, pageIdsRanks.size());
+    private MergedRanking rankPages(List<SiteEntity> siteEntities, List<String> queryLemmas,
+        PhraseQuery phrase, int depth, SearchCursor after) {
+        return siteSearchExecutor.rankSites(siteEntities, depth,
+            siteEntity -> rankSitePages(siteEntity, queryLemmas, phrase, depth, after));
+    }
+
+    private RankedPages rankSitePages(SiteEntity siteEntity, List<String> queryLemmas,
+        PhraseQuery phrase, int depth, SearchCursor after) {
+        TopPagesCollector collector = new TopPagesCollector(depth);
+        if (after != null) {
+            collector.startAfter(after);
+        }
+        Map<String, LemmaInfo> resolved = lemmaDictionary.resolve(siteEntity.getId(),
+            queryLemmas);
+        long[] phraseLemmaIds = null;
+        if (phrase != null) {
+            phraseLemmaIds = new long[phrase.lemmas().size()];
+            for (int i = 0; i < phraseLemmaIds.length; i++) {
+                LemmaInfo lemmaInfo = resolved.get(phrase.lemmas().get(i));
+                if (lemmaInfo == null) {
+                    return collector.drainSorted();
+                }
+                phraseLemmaIds[i] = lemmaInfo.getId();
+            }
+        }
+        List<LemmaInfo> lemmaInfos = new ArrayList<>(resolved.values());
+        lemmaInfos.sort(Comparator.comparingInt(LemmaInfo::getFrequency));
+        collectPageIdRank(lemmaInfos, siteEntity.getId(), phrase, phraseLemmaIds, collector);
+        return collector.drainSorted();
     }
 
     private List<SiteEntity> findSiteEntity(String site) {
@@ -115,102 +221,160 @@ public class SearchServiceImpl implements SearchService {
         return true;
     }
 
-    private List<String> excludeTopLemmas(List<String> lemmas) {
-        int sizeLemmas = lemmaRepository.getSizeLemmas();
-        int cutLemmas = (int) (sizeLemmas * EXCLUDE_TOP_LEMMAS_PERCENT);
-        List<String> topLemmas = new ArrayList<>(lemmaRepository.getTopLemma(cutLemmas));
+    private List<String> excludeTopLemmas(List<String> lemmas, Long siteId) {
+        Set<String> topLemmas = stopLemmaTracker.getStopLemmas(siteId);
         return lemmas.stream()
             .filter(l -> !topLemmas.contains(l))
             .collect(Collectors.toList());
     }
 
-    private List<LemmaEntity> convertToLemmaEntity(List<String> lemmas, Long siteId) {
-        List<LemmaEntity> lemmaModels = new ArrayList<>();
-        for (String lemma : lemmas) {
-            LemmaEntity lemmaModel = lemmaRepository.findLemmaByNameAndSiteId(lemma, siteId);
-            if (lemmaModel != null) {
-                lemmaModels.add(lemmaModel);
-            }
+    /**
+     * Метод пересекает сжатые множества страниц лемм, начиная с самого редкого, и прекращает
+     * пересечение, как только результат становится пустым. Ранги оставшихся страниц читаются из
+     * параллельных массивов рангов и передаются в коллектор лучших результатов. Для фразового
+     * запроса из пересечения остаются страницы, где леммы стоят на местах фразы.
+     */
+    private void collectPageIdRank(List<LemmaInfo> queryLemmaModels, Long siteId,
+        PhraseQuery phrase, long[] phraseLemmaIds, TopPagesCollector collector) {
+        if (queryLemmaModels.isEmpty()) {
+            return;
         }
-        return lemmaModels;
-    }
+        List<PostingList> postingLists = new ArrayList<>(queryLemmaModels.size());
+        for (LemmaInfo lemmaInfo : queryLemmaModels) {
+            postingLists.add(invertedIndex.getPostings(siteId, lemmaInfo.getId()));
+        }
+        postingLists.sort(Comparator.comparingInt(PostingList::size));
 
-    private Map<Long, Float> collectPageIdRank(List<LemmaEntity> queryLemmaModels) {
-        Map<Long, Float> pageIdsRank = new HashMap<>();
-        for (int i = 0; i < queryLemmaModels.size(); i++) {
-            Map<Long, Float> comparedPageIdsRank = new HashMap<>();
-            List<IndexEntity> indexModels = indexRepository.findByLemmaId(
-                queryLemmaModels.get(i).getId());
-            for (IndexEntity indexModel : indexModels) {
-                comparedPageIdsRank.put(indexModel.getPageId().getId(), indexModel.getRating());
-            }
-            if (i == 0) {
-                pageIdsRank.putAll(comparedPageIdsRank);
-                continue;
+        PageIdBitmap matchedPageIds = postingLists.getFirst().pageIds();
+        for (int i = 1; i < postingLists.size() && !matchedPageIds.isEmpty(); i++) {
+            matchedPageIds = matchedPageIds.and(postingLists.get(i).pageIds());
+        }
+        if (phrase != null && !matchedPageIds.isEmpty()) {
+            matchedPageIds = positionalIndexReader.filterPhrase(matchedPageIds, phrase,
+                phraseLemmaIds);
+        }
+        if (matchedPageIds.isEmpty()) {
+            return;
+        }
+        PostingList.RatingCursor[] ratingCursors =
+            new PostingList.RatingCursor[postingLists.size()];
+        for (int i = 0; i < ratingCursors.length; i++) {
+            ratingCursors[i] = postingLists.get(i).ratingCursor();
+        }
+        matchedPageIds.forEach(pageId -> {
+            float rank = 0;
+            for (PostingList.RatingCursor ratingCursor : ratingCursors) {
+                rank += ratingCursor.rating(pageId);
             }
-            pageIdsRank = pageIdsRank.entrySet().stream()
-                .filter(entry -> comparedPageIdsRank.containsKey(entry.getKey()))
-                .collect(Collectors.toMap(
-                    Map.Entry::getKey,
-                    entry -> entry.getValue() + comparedPageIdsRank.get(entry.getKey())
-                ));
-        }
-        return pageIdsRank;
+            collector.offer(pageId, rank);
+        });
     }
 
-    private Map<PageEntity, Float> calculateRelevance(Map<Long, Float> pageIdsRanks, int offset,
-        int limit) {
-        Float maxAbsoluteRelevance = pageIdsRanks
-            .entrySet().stream()
-            .max(Map.Entry.comparingByValue())
-            .orElseThrow(NullPointerException::new)
-            .getValue();
-
-        pageIdsRanks = pageIdsRanks.entrySet().stream().collect(Collectors.toMap(
-            Map.Entry::getKey,
-            entry -> entry.getValue() / maxAbsoluteRelevance
-        ));
-
-        Map<PageEntity, Float> pageModelsRelevance = new LinkedHashMap<>();
-        pageIdsRanks.entrySet().stream()
-            .sorted(Collections.reverseOrder(Map.Entry.comparingByValue()))
-            .skip(offset)
-            .limit(limit)
-            .forEachOrdered(entry -> pageModelsRelevance.put(
-                pageRepository.findById(entry.getKey()).orElseThrow(NullPointerException::new),
-                entry.getValue()));
+    /**
+     * Метод нормализует ранги лучших страниц и одним запросом загружает краткие сведения только о
+     * страницах запрошенного окна выдачи.
+     */
+    private Map<PageSummaryProjection, Float> calculateRelevance(RankedPages topPages,
+        int offset, int limit) {
+        float maxAbsoluteRelevance = topPages.maxScore();
 
+        List<Long> pageIds = new ArrayList<>();
+        for (int i = offset; i < topPages.size() && i < offset + limit; i++) {
+            pageIds.add(topPages.pageIds()[i]);
+        }
+        Map<PageSummaryProjection, Float> pageModelsRelevance = new LinkedHashMap<>();
+        if (pageIds.isEmpty()) {
+            return pageModelsRelevance;
+        }
+        Map<Long, PageSummaryProjection> pageSummaries = new HashMap<>();
+        pageRepository.findSummariesByIds(pageIds)
+            .forEach(summary -> pageSummaries.put(summary.getId(), summary));
+
+        for (int i = offset; i < topPages.size() && i < offset + limit; i++) {
+            PageSummaryProjection summary = pageSummaries.get(topPages.pageIds()[i]);
+            if (summary != null) {
+                pageModelsRelevance.put(summary, topPages.scores()[i] / maxAbsoluteRelevance);
+            }
+        }
         return pageModelsRelevance;
     }
 
-    private SearchResponse createPositiveResponse(Map<PageEntity, Float> relevancePages,
-        List<String> queryLemmas, int countRelevancePages) {
+    /**
+     * Метод строит курсор по последней странице окна выдачи.
+     *
+     * @param start  позиция окна в ранжировании
+     * @param offset позиция окна в общей выдаче
+     * @return курсор или {@code null}, если окно последнее
+     */
+    private String createNextCursor(RankedPages rankedPages, int start, int offset, int limit,
+        long generation) {
+        int last = Math.min(start + limit, rankedPages.size()) - 1;
+        if (last < start || offset + limit >= rankedPages.totalCount()) {
+            return null;
+        }
+        return new SearchCursor(generation, offset + last - start + 1,
+            rankedPages.scores()[last], rankedPages.pageIds()[last]).encode();
+    }
+
+    private List<DataSearchItem> createSearchItems(
+        Map<PageSummaryProjection, Float> relevancePages, List<String> queryLemmas) {
+        Map<Long, int[]> matchOffsets = crawlerConfiguration.isPositionalIndex()
+            ? positionalIndexReader.findMatchOffsets(relevancePages.keySet().stream()
+                .map(PageSummaryProjection::getId).toList(), queryLemmas)
+            : Map.of();
         List<DataSearchItem> data = new ArrayList<>();
-        for (Map.Entry<PageEntity, Float> entry : relevancePages.entrySet()) {
-            PageEntity pageEntity = entry.getKey();
+        for (Map.Entry<PageSummaryProjection, Float> entry : relevancePages.entrySet()) {
+            PageSummaryProjection pageEntity = entry.getKey();
             DataSearchItem item = new DataSearchItem();
-            item.setSite("http://" + pageEntity.getSiteId().getName() + pageEntity.getPath());
+            item.setSite("http://" + pageEntity.getSiteName() + pageEntity.getPath());
             item.setUri("");
-            item.setSiteName(pageEntity.getSiteId().getName());
+            item.setSiteName(pageEntity.getSiteName());
             item.setTitle(getPageTitle(pageEntity));
-            item.setSnippet(createSnippet(pageEntity, queryLemmas));
+            item.setSnippet(createSnippet(pageEntity, queryLemmas,
+                matchOffsets.get(pageEntity.getId())));
             item.setRelevance(entry.getValue());
             data.add(item);
         }
-        SearchResponse searchResponse = new SearchResponse();
+        return data;
+    }
+
+    private SearchPageResponse createPositiveResponse(List<DataSearchItem> data,
+        int countRelevancePages, List<String> unavailableSites) {
+        SearchPageResponse searchResponse = new SearchPageResponse();
         searchResponse.setResult(true);
         searchResponse.setCount(countRelevancePages);
         searchResponse.setData(data);
+        setUnavailableSites(searchResponse, unavailableSites);
         return searchResponse;
     }
 
-    private String getPageTitle(PageEntity pageModel) {
-        Document doc = Jsoup.parse(pageModel.getContent());
-        return doc.title();
+    private void setUnavailableSites(SearchPageResponse searchResponse,
+        List<String> unavailableSites) {
+        searchResponse.setPartial(!unavailableSites.isEmpty());
+        searchResponse.setUnavailableSites(unavailableSites);
+    }
+
+    private String getPageTitle(PageSummaryProjection pageModel) {
+        return pageModel.getTitle() == null ? "" : pageModel.getTitle();
     }
 
-    private String createSnippet(PageEntity pageModel, List<String> queryLemmas) {
-        Document doc = Jsoup.parse(pageModel.getContent());
-        return new Morphology(luceneMorphology).createSnippet(doc.outerHtml(), queryLemmas);
+    /**
+     * Метод строит сниппет по видимому тексту, сохранённому при индексации. Страницы, сохранённые
+     * до появления колонки text, разбираются из исходного HTML. Если при индексации записаны
+     * позиции лемм, сниппет вырезается из текста по смещениям совпадений без лемматизации.
+     */
+    private String createSnippet(PageSummaryProjection pageModel, List<String> queryLemmas,
+        int[] matchOffsets) {
+        Morphology morphology = new Morphology(wordFormCache);
+        if (pageModel.getText() != null && matchOffsets != null && matchOffsets.length > 0) {
+            return morphology.createSnippet(pageModel.getText(), matchOffsets);
+        }
+        if (pageModel.getText() == null) {
+            String content = pageRepository.findById(pageModel.getId())
+                .map(PageEntity::getContent)
+                .orElse("");
+            return morphology.createSnippet(Jsoup.parse(content).outerHtml(), queryLemmas);
+        }
+        return morphology.createSnippet(pageModel.getText(), queryLemmas);
     }
 }
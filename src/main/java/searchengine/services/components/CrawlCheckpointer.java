@@ -0,0 +1,227 @@
+package searchengine.services.components;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.stereotype.Component;
+import searchengine.config.CrawlerConfiguration;
+import searchengine.model.SiteEntity;
+import searchengine.repositories.SiteRepository;
+
+/**
+ * Контрольные точки обхода сайтов. Пока сайт обходится, состояние его {@link UrlFrontier}
+ * периодически записывается в файл; при остановке индексации или завершении приложения
+ * записывается последнее состояние. По файлу обход можно продолжить, не загружая повторно уже
+ * проиндексированные страницы. После успешного обхода файл удаляется.
+ *
+ * <p>Перед записью файла сбрасывается буфер {@link IndexBulkWriter}: страницы, завершённые до
+ * снимка, к этому моменту полностью записаны в базу данных.
+ *
+ * <p>При запуске удаляются файлы сайтов, которых нет в базе данных: такой файл остался от
+ * пересозданной базы, и его адреса ссылаются на уже удалённые страницы.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class CrawlCheckpointer implements InitializingBean, DisposableBean {
+
+    private static final int MAGIC = 0x434b5031;
+    private static final String CHECKPOINT_FILE_PATTERN = "site-%d.ckpt";
+    private static final String CHECKPOINT_FILE_GLOB = "site-*.ckpt";
+    private static final Pattern CHECKPOINT_FILE_NAME =
+        Pattern.compile("site-(\\d{1,18})\\.ckpt");
+
+    private final CrawlerConfiguration crawlerConfiguration;
+    private final IndexBulkWriter indexBulkWriter;
+    private final SiteRepository siteRepository;
+    private final Map<Long, ActiveCrawl> activeCrawls = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(
+        runnable -> {
+            Thread thread = new Thread(runnable, "crawl-checkpointer");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+    @Override
+    public void afterPropertiesSet() {
+        deleteOrphanCheckpoints();
+        CrawlerConfiguration.Checkpoint settings = crawlerConfiguration.getCheckpoint();
+        if (settings.isEnabled()) {
+            long interval = Math.max(1, settings.getInterval());
+            timer.scheduleWithFixedDelay(this::saveAll, interval, interval,
+                TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        timer.shutdownNow();
+        saveAll();
+    }
+
+    /**
+     * Метод начинает сохранять состояние обхода сайта.
+     */
+    public void register(SiteEntity siteEntity, UrlFrontier frontier) {
+        activeCrawls.put(siteEntity.getId(), new ActiveCrawl(siteEntity, frontier));
+    }
+
+    /**
+     * Метод записывает последнее состояние прерванного обхода и перестаёт его сохранять.
+     */
+    public synchronized void suspend(Long siteId) {
+        ActiveCrawl crawl = activeCrawls.remove(siteId);
+        if (crawl != null) {
+            save(crawl);
+        }
+    }
+
+    /**
+     * Метод записывает состояние всех обходов при остановке индексации.
+     */
+    public synchronized void suspendAll() {
+        activeCrawls.keySet().forEach(this::suspend);
+    }
+
+    /**
+     * Метод удаляет контрольную точку успешно завершённого обхода.
+     */
+    public synchronized void complete(Long siteId) {
+        activeCrawls.remove(siteId);
+        delete(siteId);
+    }
+
+    public void delete(Long siteId) {
+        try {
+            Files.deleteIfExists(getCheckpointPath(siteId));
+        } catch (IOException ex) {
+            log.warn("Не удалось удалить контрольную точку сайта {}", siteId, ex);
+        }
+    }
+
+    /**
+     * Метод читает контрольную точку сайта.
+     *
+     * @return восстановленное множество адресов или {@code null}, если контрольной точки нет,
+     * она повреждена или записана для другого сайта
+     */
+    public UrlFrontier load(SiteEntity siteEntity) {
+        Path path = getCheckpointPath(siteEntity.getId());
+        if (!crawlerConfiguration.getCheckpoint().isEnabled() || !Files.isRegularFile(path)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(
+            new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC || in.readLong() != siteEntity.getId()
+                || !in.readUTF().equals(siteEntity.getUrl())) {
+                log.info("Контрольная точка {} принадлежит другому сайту", path);
+                return null;
+            }
+            byte[] snapshot = new byte[in.readInt()];
+            in.readFully(snapshot);
+            return UrlFrontier.restore(snapshot);
+        } catch (IOException ex) {
+            log.warn("Не удалось прочитать контрольную точку {}", path, ex);
+            return null;
+        }
+    }
+
+    private void deleteOrphanCheckpoints() {
+        Path directory = Paths.get(crawlerConfiguration.getCheckpoint().getDirectory());
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        Set<Long> siteIds = siteRepository.getAllSite().stream()
+            .map(SiteEntity::getId)
+            .collect(Collectors.toSet());
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory,
+            CHECKPOINT_FILE_GLOB)) {
+            for (Path file : files) {
+                Long siteId = parseSiteId(file);
+                if (siteId == null || !siteIds.contains(siteId)) {
+                    Files.deleteIfExists(file);
+                    log.info("Удалена контрольная точка {}: сайта нет в базе данных", file);
+                }
+            }
+        } catch (IOException ex) {
+            log.warn("Не удалось очистить каталог контрольных точек {}", directory, ex);
+        }
+    }
+
+    private static Long parseSiteId(Path file) {
+        Matcher matcher = CHECKPOINT_FILE_NAME.matcher(file.getFileName().toString());
+        return matcher.matches() ? Long.valueOf(matcher.group(1)) : null;
+    }
+
+    private void saveAll() {
+        activeCrawls.values().forEach(this::saveIfActive);
+    }
+
+    /**
+     * Метод записывает состояние обхода, если тот не был за это время завершён или прерван.
+     */
+    private synchronized void saveIfActive(ActiveCrawl crawl) {
+        if (activeCrawls.get(crawl.siteEntity().getId()) == crawl) {
+            save(crawl);
+        }
+    }
+
+    private void save(ActiveCrawl crawl) {
+        if (!crawlerConfiguration.getCheckpoint().isEnabled()) {
+            return;
+        }
+        Long siteId = crawl.siteEntity().getId();
+        Path path = getCheckpointPath(siteId);
+        try {
+            byte[] snapshot = crawl.frontier().snapshot();
+            indexBulkWriter.flush();
+            Files.createDirectories(path.getParent());
+            Path tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tempPath)))) {
+                out.writeInt(MAGIC);
+                out.writeLong(siteId);
+                out.writeUTF(crawl.siteEntity().getUrl());
+                out.writeInt(snapshot.length);
+                out.write(snapshot);
+            }
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+            log.info("Контрольная точка сайта {}: адресов {}, в очереди {}",
+                crawl.siteEntity().getUrl(), crawl.frontier().size(),
+                crawl.frontier().getPending().size());
+        } catch (IOException | RuntimeException ex) {
+            log.error("Ошибка записи контрольной точки сайта {}", crawl.siteEntity().getUrl(),
+                ex);
+        }
+    }
+
+    private Path getCheckpointPath(Long siteId) {
+        return Paths.get(crawlerConfiguration.getCheckpoint().getDirectory(),
+            String.format(CHECKPOINT_FILE_PATTERN, siteId));
+    }
+
+    private record ActiveCrawl(SiteEntity siteEntity, UrlFrontier frontier) {
+
+    }
+}
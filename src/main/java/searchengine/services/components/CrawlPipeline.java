@@ -0,0 +1,301 @@
+package searchengine.services.components;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.jsoup.nodes.Document;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import searchengine.config.CrawlerConfiguration;
+import searchengine.dto.indexing.PipelineStageStatus;
+import searchengine.exceptions.IndexingStopUserException;
+import searchengine.model.PageEntity;
+import searchengine.model.SiteEntity;
+import searchengine.repositories.PageRepository;
+import searchengine.repositories.SiteRepository;
+import searchengine.repositories.projections.LemmaProjection;
+
+/**
+ * Конвейер обхода сайтов из четырёх стадий: загрузка страницы, разбор и поиск ссылок,
+ * лемматизация, пакетное сохранение. У каждой стадии свои потоки и своя очередь; очереди после
+ * загрузки ограничены, поэтому медленная запись в базу данных притормаживает загрузку, а не
+ * накапливает страницы в памяти. Стадии общие для всех сайтов и запускаются при первом обходе.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class CrawlPipeline implements DisposableBean {
+
+    private final CrawlerConfiguration crawlerConfiguration;
+    private final PageRepository pageRepository;
+    private final SiteRepository siteRepository;
+    private final DatabaseAccessLimiter databaseAccessLimiter;
+    private final WordFormCache wordFormCache;
+    private final CrawlScheduler crawlScheduler;
+    private final TransactionTemplate transactionTemplate;
+    private final Set<SiteCrawl> activeCrawls = ConcurrentHashMap.newKeySet();
+    private CrawlStage<PageTask> fetchStage;
+    private CrawlStage<FetchedPage> parseStage;
+    private CrawlStage<ParsedPage> lemmatizeStage;
+    private CrawlStage<LemmatizedPage> persistStage;
+
+    /**
+     * Метод начинает обход сайта с переданной страницы. С этого момента индексация считается
+     * запущенной.
+     *
+     * @return обход сайта, завершающийся после сохранения последней страницы
+     */
+    public SiteCrawl start(PageParser rootParser) {
+        startStages();
+        SiteCrawl crawl = new SiteCrawl(rootParser.getSiteEntity());
+        activeCrawls.add(crawl);
+        crawl.fork(rootParser);
+        rootParser.takeRevisitTasks().forEach(crawl::fork);
+        return crawl;
+    }
+
+    public boolean isRunning() {
+        return !activeCrawls.isEmpty();
+    }
+
+    public void stopAll() {
+        for (SiteCrawl crawl : activeCrawls) {
+            crawl.fail(new IndexingStopUserException());
+        }
+    }
+
+    public synchronized List<PipelineStageStatus> getStatus() {
+        List<PipelineStageStatus> statuses = new ArrayList<>();
+        if (fetchStage == null) {
+            return statuses;
+        }
+        for (CrawlStage<?> stage : List.of(fetchStage, parseStage, lemmatizeStage,
+            persistStage)) {
+            PipelineStageStatus status = new PipelineStageStatus();
+            status.setStage(stage.getName());
+            status.setQueued(stage.getQueued());
+            status.setCapacity(stage.getCapacity());
+            status.setThreads(stage.getThreads());
+            status.setBusyThreads(stage.getBusyThreads());
+            statuses.add(status);
+        }
+        return statuses;
+    }
+
+    @Override
+    public synchronized void destroy() {
+        if (fetchStage != null) {
+            List.of(fetchStage, parseStage, lemmatizeStage, persistStage)
+                .forEach(CrawlStage::stop);
+        }
+    }
+
+    private synchronized void startStages() {
+        if (fetchStage != null) {
+            return;
+        }
+        CrawlerConfiguration.Pipeline settings = crawlerConfiguration.getPipeline();
+        fetchStage = new CrawlStage<>("crawl-fetch", settings.getFetchThreads(), 0, 1,
+            Thread.ofVirtual().factory(), batch -> batch.forEach(this::fetch));
+        parseStage = new CrawlStage<>("crawl-parse", settings.getParseThreads(),
+            settings.getParseQueueCapacity(), 1, Thread.ofPlatform().daemon().factory(),
+            batch -> batch.forEach(this::parse));
+        lemmatizeStage = new CrawlStage<>("crawl-lemmatize", settings.getLemmatizeThreads(),
+            settings.getLemmatizeQueueCapacity(), 1, Thread.ofPlatform().daemon().factory(),
+            batch -> batch.forEach(this::lemmatize));
+        persistStage = new CrawlStage<>("crawl-persist", settings.getPersistThreads(),
+            settings.getPersistQueueCapacity(), settings.getPersistBatchSize(),
+            Thread.ofPlatform().daemon().factory(), this::persist);
+        List.of(fetchStage, parseStage, lemmatizeStage, persistStage)
+            .forEach(CrawlStage::start);
+    }
+
+    private void fetch(PageTask task) {
+        SiteCrawl crawl = task.crawl();
+        try {
+            if (crawl.isCancelled()) {
+                crawl.finish(task.parser());
+                return;
+            }
+            Document doc = task.parser().isNewPage() ? task.parser().fetchPage() : null;
+            if (doc == null) {
+                task.parser().completePage();
+                crawl.finish(task.parser());
+                return;
+            }
+            parseStage.submit(new FetchedPage(crawl, task.parser(), doc));
+        } catch (RuntimeException ex) {
+            crawl.fail(ex);
+            crawl.finish(task.parser());
+        }
+    }
+
+    private void parse(FetchedPage page) {
+        SiteCrawl crawl = page.crawl();
+        try {
+            if (crawl.isCancelled()) {
+                crawl.finish(page.parser());
+                return;
+            }
+            ExtractedPage extractedPage = page.parser().extract(page.document());
+            PageEntity pageEntity = page.parser().buildPage(extractedPage);
+            if (pageEntity == null) {
+                page.parser().completePage();
+                crawl.finish(page.parser());
+                return;
+            }
+            page.parser().createSubtasks(extractedPage.links()).forEach(crawl::fork);
+            lemmatizeStage.submit(new ParsedPage(crawl, page.parser(), pageEntity));
+        } catch (RuntimeException ex) {
+            crawl.fail(ex);
+            crawl.finish(page.parser());
+        }
+    }
+
+    private void lemmatize(ParsedPage page) {
+        SiteCrawl crawl = page.crawl();
+        try {
+            if (crawl.isCancelled()) {
+                crawl.finish(page.parser());
+                return;
+            }
+            LemmaCounter lemmasCount = page.pageEntity().getDuplicateOf() != null
+                ? new LemmaCounter()
+                : new Morphology(wordFormCache).collectLemmas(page.pageEntity().getContent(),
+                    crawlerConfiguration.isPositionalIndex() ? page.pageEntity().getText()
+                        : null);
+            persistStage.submit(new LemmatizedPage(crawl, page.parser(), page.pageEntity(),
+                lemmasCount));
+        } catch (RuntimeException ex) {
+            crawl.fail(ex);
+            crawl.finish(page.parser());
+        }
+    }
+
+    /**
+     * Метод сохраняет пакет страниц: страницы одного сайта записываются одной транзакцией, после
+     * чего по каждой сохраняются леммы и индекс. Индекс прежних версий изменившихся страниц
+     * удаляется в той же транзакции.
+     */
+    private void persist(List<LemmatizedPage> batch) {
+        Map<SiteCrawl, List<LemmatizedPage>> bySite = new LinkedHashMap<>();
+        for (LemmatizedPage page : batch) {
+            bySite.computeIfAbsent(page.crawl(), crawl -> new ArrayList<>()).add(page);
+        }
+        bySite.forEach((crawl, pages) -> {
+            try {
+                if (!crawl.isCancelled()) {
+                    persistSitePages(crawl.siteEntity, pages);
+                    pages.forEach(page -> page.parser().completePage());
+                }
+            } catch (RuntimeException ex) {
+                crawl.fail(ex);
+            } finally {
+                pages.forEach(page -> crawl.finish(page.parser()));
+            }
+        });
+    }
+
+    private void persistSitePages(SiteEntity siteEntity, List<LemmatizedPage> pages) {
+        List<PageEntity> pageEntities = pages.stream().map(LemmatizedPage::pageEntity).toList();
+        List<List<LemmaProjection>> removedLemmas = databaseAccessLimiter.call(
+            () -> transactionTemplate.execute(status -> {
+                List<List<LemmaProjection>> lemmas = pages.stream()
+                    .map(page -> page.parser().deleteStoredIndex())
+                    .toList();
+                pageRepository.saveAll(pageEntities);
+                siteRepository.updateStatusTime(siteEntity.getId(), LocalDateTime.now());
+                return lemmas;
+            }));
+        for (int i = 0; i < pages.size(); i++) {
+            pages.get(i).parser().forgetStoredIndex(removedLemmas.get(i));
+        }
+        for (LemmatizedPage page : pages) {
+            page.parser().indexPage(page.pageEntity(), page.lemmasCount());
+        }
+        log.info("{}: сохранено страниц {}", siteEntity.getUrl(), pages.size());
+    }
+
+    /**
+     * Обход одного сайта. Завершается, когда не остаётся страниц ни в одной стадии, или при
+     * первой ошибке; страницы остановленного обхода пропускаются стадиями без обработки.
+     */
+    public final class SiteCrawl {
+
+        private final SiteEntity siteEntity;
+        private final AtomicLong pending = new AtomicLong();
+        private final Map<PageParser, CrawlScheduler.Permit> permits = new ConcurrentHashMap<>();
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        private SiteCrawl(SiteEntity siteEntity) {
+            this.siteEntity = siteEntity;
+        }
+
+        public CompletableFuture<Void> completion() {
+            return done;
+        }
+
+        /**
+         * Метод ставит страницу в очередь загрузки, когда {@link CrawlScheduler} выдаст на неё
+         * разрешение. Разрешение действует, пока страница проходит стадии конвейера.
+         */
+        private void fork(PageParser parser) {
+            pending.incrementAndGet();
+            crawlScheduler.acquire(siteEntity.getId()).whenComplete((permit, ex) -> {
+                if (ex != null) {
+                    finish(parser);
+                    return;
+                }
+                permits.put(parser, permit);
+                fetchStage.submit(new PageTask(this, parser));
+            });
+        }
+
+        private void finish(PageParser parser) {
+            CrawlScheduler.Permit permit = permits.remove(parser);
+            if (permit != null) {
+                permit.close();
+            }
+            if (pending.decrementAndGet() == 0 && done.complete(null)) {
+                activeCrawls.remove(this);
+            }
+        }
+
+        private void fail(RuntimeException cause) {
+            if (done.completeExceptionally(cause)) {
+                log.info("Обход {} прерван: {}", siteEntity.getUrl(), cause.getMessage());
+                activeCrawls.remove(this);
+            }
+        }
+
+        private boolean isCancelled() {
+            return done.isCompletedExceptionally();
+        }
+    }
+
+    private record PageTask(SiteCrawl crawl, PageParser parser) {
+
+    }
+
+    private record FetchedPage(SiteCrawl crawl, PageParser parser, Document document) {
+
+    }
+
+    private record ParsedPage(SiteCrawl crawl, PageParser parser, PageEntity pageEntity) {
+
+    }
+
+    private record LemmatizedPage(SiteCrawl crawl, PageParser parser, PageEntity pageEntity,
+        LemmaCounter lemmasCount) {
+
+    }
+}
@@ -0,0 +1,255 @@
+package searchengine.services.components;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import searchengine.config.CrawlerConfiguration;
+import searchengine.config.Site;
+import searchengine.config.SitesList;
+import searchengine.model.SiteEntity;
+
+/**
+ * Планировщик обхода сайтов. Каждый обходимый сайт — отдельное задание, а обработка страницы
+ * начинается только по разрешению планировщика. Одновременно выдаётся не больше
+ * {@code global-concurrency} разрешений на все сайты. Свободное место достаётся заданию с
+ * наибольшим приоритетом, а среди равных — отставшему сильнее других с учётом веса (шаговое
+ * планирование): сайт с весом 2 получает вдвое больше разрешений, чем сайт с весом 1. Небольшие
+ * сайты поэтому не ждут в общей очереди за страницами крупных и завершаются быстро, а бюджет,
+ * не занятый одними сайтами, сразу используют другие.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class CrawlScheduler {
+
+    private static final double STRIDE = 1.0;
+
+    private final CrawlerConfiguration crawlerConfiguration;
+    private final SitesList sitesList;
+    private final Map<Long, SiteJob> jobs = new HashMap<>();
+    private int inFlight;
+    private double virtualTime;
+
+    /**
+     * Метод создаёт задание обхода сайта с весом, приоритетом и ограничением из настроек сайта.
+     * Задание прежнего обхода того же сайта заменяется.
+     */
+    public void register(SiteEntity siteEntity) {
+        Site settings = findSettings(siteEntity.getName());
+        SiteJob job = new SiteJob(siteEntity.getUrl(), Math.max(1, settings.getWeight()),
+            settings.getPriority(), Math.max(0, settings.getMaxConcurrency()));
+        SiteJob previous;
+        synchronized (this) {
+            job.pass = virtualTime;
+            previous = jobs.put(siteEntity.getId(), job);
+        }
+        if (previous != null) {
+            cancelWaiting(previous);
+        }
+        log.info("Задание обхода {}: вес {}, приоритет {}, ограничение {}", job.url, job.weight,
+            job.priority, job.maxConcurrency == 0 ? "нет" : job.maxConcurrency);
+    }
+
+    /**
+     * Метод снимает задание завершённого или прерванного обхода. Ожидающие разрешения
+     * отменяются, а уже выданные освобождают бюджет при закрытии.
+     */
+    public void unregister(Long siteId) {
+        SiteJob job;
+        synchronized (this) {
+            job = jobs.remove(siteId);
+        }
+        if (job != null) {
+            cancelWaiting(job);
+            log.info("Задание обхода {} снято: выдано разрешений {}", job.url, job.granted);
+        }
+    }
+
+    /**
+     * @return наибольшее число одновременно обрабатываемых страниц сайта
+     */
+    public synchronized int getConcurrencyLimit(Long siteId) {
+        int budget = getBudget();
+        SiteJob job = jobs.get(siteId);
+        return job == null || job.maxConcurrency == 0 ? budget
+            : Math.min(budget, job.maxConcurrency);
+    }
+
+    /**
+     * Метод ставит страницу сайта в очередь задания. Для сайта без задания, например при
+     * индексации отдельной страницы, разрешение выдаётся сразу и бюджет не расходует.
+     *
+     * @return разрешение, которое будет выдано, когда подойдёт очередь сайта, или отменено при
+     * снятии задания
+     */
+    public CompletableFuture<Permit> acquire(Long siteId) {
+        CompletableFuture<Permit> permit = new CompletableFuture<>();
+        synchronized (this) {
+            SiteJob job = jobs.get(siteId);
+            if (job == null) {
+                permit.complete(new Permit(this, null));
+                return permit;
+            }
+            if (job.waiting.isEmpty() && job.inFlight == 0) {
+                job.pass = Math.max(job.pass, virtualTime);
+            }
+            job.waiting.add(permit);
+        }
+        dispatch();
+        return permit;
+    }
+
+    /**
+     * Метод ждёт разрешения для страницы сайта, блокируя поток. Предназначен для виртуальных
+     * потоков; пул {@link java.util.concurrent.ForkJoinPool} получает разрешения через
+     * {@link #acquire(Long)}, чтобы ожидание не занимало его потоки.
+     *
+     * @throws java.util.concurrent.CancellationException если задание сайта снято
+     */
+    public Permit await(Long siteId) throws InterruptedException {
+        CompletableFuture<Permit> permit = acquire(siteId);
+        try {
+            permit.get();
+        } catch (ExecutionException ignored) {
+            // разрешения завершаются только успешно или отменой
+        } catch (InterruptedException ex) {
+            if (!permit.cancel(false)) {
+                permit.join().close();
+            }
+            throw ex;
+        }
+        return permit.join();
+    }
+
+    /**
+     * Метод выдаёт разрешения, пока есть бюджет. Ожидающие получают разрешения вне блокировки,
+     * а отменённое за это время разрешение сразу возвращается.
+     */
+    private void dispatch() {
+        List<CompletableFuture<Permit>> waiters = new ArrayList<>();
+        List<Permit> permits = new ArrayList<>();
+        synchronized (this) {
+            int budget = getBudget();
+            while (inFlight < budget) {
+                SiteJob job = nextJob();
+                if (job == null) {
+                    break;
+                }
+                CompletableFuture<Permit> waiter = job.waiting.poll();
+                if (waiter.isDone()) {
+                    continue;
+                }
+                inFlight++;
+                job.inFlight++;
+                job.granted++;
+                virtualTime = job.pass;
+                job.pass += STRIDE / job.weight;
+                waiters.add(waiter);
+                permits.add(new Permit(this, job));
+            }
+        }
+        for (int i = 0; i < waiters.size(); i++) {
+            if (!waiters.get(i).complete(permits.get(i))) {
+                permits.get(i).close();
+            }
+        }
+    }
+
+    /**
+     * @return задание с ожидающими страницами и свободным местом, наибольшим приоритетом и
+     * наименьшим пройденным путём
+     */
+    private SiteJob nextJob() {
+        SiteJob next = null;
+        for (SiteJob job : jobs.values()) {
+            if (job.waiting.isEmpty()
+                || job.maxConcurrency > 0 && job.inFlight >= job.maxConcurrency) {
+                continue;
+            }
+            if (next == null || job.priority > next.priority
+                || job.priority == next.priority && job.pass < next.pass) {
+                next = job;
+            }
+        }
+        return next;
+    }
+
+    private void release(SiteJob job) {
+        synchronized (this) {
+            inFlight--;
+            job.inFlight--;
+        }
+        dispatch();
+    }
+
+    private void cancelWaiting(SiteJob job) {
+        List<CompletableFuture<Permit>> waiting;
+        synchronized (this) {
+            waiting = new ArrayList<>(job.waiting);
+            job.waiting.clear();
+        }
+        waiting.forEach(permit -> permit.cancel(false));
+    }
+
+    private int getBudget() {
+        return Math.max(1, crawlerConfiguration.getScheduler().getGlobalConcurrency());
+    }
+
+    private Site findSettings(String siteName) {
+        return sitesList.getSites().stream()
+            .filter(site -> site.getName().equals(siteName))
+            .findFirst()
+            .orElseGet(Site::new);
+    }
+
+    private static final class SiteJob {
+
+        private final String url;
+        private final int weight;
+        private final int priority;
+        private final int maxConcurrency;
+        private final Queue<CompletableFuture<Permit>> waiting = new ArrayDeque<>();
+        private int inFlight;
+        private long granted;
+        private double pass;
+
+        private SiteJob(String url, int weight, int priority, int maxConcurrency) {
+            this.url = url;
+            this.weight = weight;
+            this.priority = priority;
+            this.maxConcurrency = maxConcurrency;
+        }
+    }
+
+    /**
+     * Разрешение на обработку одной страницы. Закрывается, когда страница обработана, и
+     * освобождает место в бюджете.
+     */
+    public static final class Permit implements AutoCloseable {
+
+        private final CrawlScheduler scheduler;
+        private final SiteJob job;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private Permit(CrawlScheduler scheduler, SiteJob job) {
+            this.scheduler = scheduler;
+            this.job = job;
+        }
+
+        @Override
+        public void close() {
+            if (job != null && closed.compareAndSet(false, true)) {
+                scheduler.release(job);
+            }
+        }
+    }
+}
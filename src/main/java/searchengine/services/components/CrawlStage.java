@@ -0,0 +1,113 @@
+package searchengine.services.components;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import lombok.extern.slf4j.Slf4j;
+import searchengine.exceptions.IndexingStopUserException;
+
+/**
+ * Стадия конвейера обхода: очередь входящих элементов и фиксированное число рабочих потоков.
+ * Если очередь ограничена, {@link #submit} блокирует поставщика, пока в ней не освободится
+ * место, так что медленная стадия притормаживает предыдущие, а не копит элементы в памяти.
+ * Рабочий поток забирает до {@code batchSize} элементов за раз.
+ *
+ * @param <T> тип элементов стадии
+ */
+@Slf4j
+public final class CrawlStage<T> {
+
+    private final String name;
+    private final BlockingQueue<T> queue;
+    private final int capacity;
+    private final int batchSize;
+    private final Consumer<List<T>> handler;
+    private final List<Thread> workers = new ArrayList<>();
+    private final AtomicInteger busyWorkers = new AtomicInteger();
+
+    /**
+     * @param capacity ёмкость очереди; {@code 0} — очередь без ограничения
+     */
+    public CrawlStage(String name, int threads, int capacity, int batchSize,
+        ThreadFactory threadFactory, Consumer<List<T>> handler) {
+        this.name = name;
+        this.capacity = capacity;
+        this.queue = capacity > 0 ? new ArrayBlockingQueue<>(capacity)
+            : new LinkedBlockingQueue<>();
+        this.batchSize = Math.max(1, batchSize);
+        this.handler = handler;
+        for (int i = 0; i < Math.max(1, threads); i++) {
+            Thread worker = threadFactory.newThread(this::work);
+            worker.setName(name + "-" + i);
+            workers.add(worker);
+        }
+    }
+
+    public void start() {
+        workers.forEach(Thread::start);
+    }
+
+    public void stop() {
+        workers.forEach(Thread::interrupt);
+    }
+
+    /**
+     * Метод передаёт элемент стадии, ожидая места в очереди.
+     *
+     * @throws IndexingStopUserException если ожидание прервано
+     */
+    public void submit(T item) {
+        try {
+            queue.put(item);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IndexingStopUserException();
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getQueued() {
+        return queue.size();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getThreads() {
+        return workers.size();
+    }
+
+    public int getBusyThreads() {
+        return busyWorkers.get();
+    }
+
+    private void work() {
+        List<T> batch = new ArrayList<>(batchSize);
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException ex) {
+                return;
+            }
+            queue.drainTo(batch, batchSize - 1);
+            busyWorkers.incrementAndGet();
+            try {
+                handler.accept(batch);
+            } catch (RuntimeException ex) {
+                log.error("Ошибка стадии {}", name, ex);
+            } finally {
+                busyWorkers.decrementAndGet();
+                batch.clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package searchengine.services.components;
+
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+import org.springframework.stereotype.Component;
+import searchengine.config.CrawlerConfiguration;
+import searchengine.exceptions.IndexingStopUserException;
+
+/**
+ * Ограничение числа потоков обхода, одновременно работающих с базой данных. При обходе в
+ * виртуальных потоках страниц в работе намного больше, чем соединений в пуле, и без
+ * ограничения потоки упирались бы в тайм-аут получения соединения.
+ */
+@Component
+public class DatabaseAccessLimiter {
+
+    private final Semaphore permits;
+
+    public DatabaseAccessLimiter(CrawlerConfiguration crawlerConfiguration) {
+        this.permits = new Semaphore(Math.max(1, crawlerConfiguration.getDbConcurrency()), true);
+    }
+
+    /**
+     * Метод выполняет действие, дождавшись свободного места. Вложенные вызовы не допускаются.
+     *
+     * @throws IndexingStopUserException если ожидание прервано остановкой индексации
+     */
+    public <T> T call(Supplier<T> action) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IndexingStopUserException();
+        }
+        try {
+            return action.get();
+        } finally {
+            permits.release();
+        }
+    }
+
+    public void run(Runnable action) {
+        call(() -> {
+            action.run();
+            return null;
+        });
+    }
+}
@@ -0,0 +1,115 @@
+package searchengine.services.components;
+
+import java.util.HashSet;
+import java.util.Set;
+import org.jsoup.Connection;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.nodes.TextNode;
+import org.jsoup.select.NodeTraversor;
+import org.jsoup.select.NodeVisitor;
+
+/**
+ * Всё, что обходу и индексации нужно от загруженной страницы, извлечённое из её DOM за один
+ * раз. После извлечения дерево документа больше не нужно: ссылки передаются в
+ * {@link UrlFrontier}, а сохранённый HTML и текст — в {@link PageIndexer}, и ни одна стадия
+ * не разбирает страницу повторно.
+ *
+ * @param statusCode   код ответа сервера
+ * @param etag         заголовок ETag ответа или {@code null}
+ * @param lastModified заголовок Last-Modified ответа или {@code null}
+ * @param content      HTML-код страницы для колонки content
+ * @param title        заголовок страницы
+ * @param text         видимый текст страницы; текст каждого блочного элемента начинается с
+ *                     новой строки
+ * @param links        относительные ссылки страницы
+ */
+public record ExtractedPage(int statusCode, String etag, String lastModified, String content,
+    String title, String text, Set<String> links) {
+
+    /**
+     * Метод сериализует документ один раз и берёт ссылки, заголовок и видимый текст из уже
+     * построенного дерева.
+     */
+    public static ExtractedPage extract(Document doc) {
+        String content = doc.outerHtml();
+        Set<String> links = new HashSet<>();
+        for (Element element : doc.select("a[href^=/]")) {
+            links.add(element.attr("href"));
+        }
+        Connection.Response response = doc.connection().response();
+        return new ExtractedPage(response.statusCode(), response.header("ETag"),
+            response.header("Last-Modified"), content, doc.title(), visibleText(doc), links);
+    }
+
+    /**
+     * Метод собирает текстовые узлы тела документа в порядке следования. Содержимое
+     * {@code <script>} и {@code <style>} текстовыми узлами не является и в текст не входит.
+     * Пробелы внутри строки схлопываются, пустые строки пропускаются.
+     */
+    static String visibleText(Document doc) {
+        StringBuilder text = new StringBuilder();
+        Element body = doc.body();
+        if (body == null) {
+            return "";
+        }
+        NodeTraversor.traverse(new NodeVisitor() {
+            @Override
+            public void head(Node node, int depth) {
+                if (node instanceof TextNode textNode) {
+                    appendWords(text, textNode.text());
+                } else if (isLineBreak(node)) {
+                    breakLine(text);
+                }
+            }
+
+            @Override
+            public void tail(Node node, int depth) {
+                if (isLineBreak(node)) {
+                    breakLine(text);
+                }
+            }
+        }, body);
+        int end = text.length();
+        while (end > 0 && Character.isWhitespace(text.charAt(end - 1))) {
+            end--;
+        }
+        return text.substring(0, end);
+    }
+
+    private static boolean isLineBreak(Node node) {
+        return node instanceof Element element
+            && (element.isBlock() || element.normalName().equals("br"));
+    }
+
+    private static void appendWords(StringBuilder text, String words) {
+        String trimmed = words.strip();
+        if (trimmed.isEmpty()) {
+            if (!words.isEmpty() && text.length() > 0
+                && !Character.isWhitespace(text.charAt(text.length() - 1))) {
+                text.append(' ');
+            }
+            return;
+        }
+        if (text.length() > 0 && !Character.isWhitespace(text.charAt(text.length() - 1))
+            && Character.isWhitespace(words.charAt(0))) {
+            text.append(' ');
+        }
+        text.append(trimmed);
+        if (Character.isWhitespace(words.charAt(words.length() - 1))) {
+            text.append(' ');
+        }
+    }
+
+    private static void breakLine(StringBuilder text) {
+        int end = text.length();
+        while (end > 0 && text.charAt(end - 1) == ' ') {
+            end--;
+        }
+        text.setLength(end);
+        if (end > 0 && text.charAt(end - 1) != '\n') {
+            text.append('\n');
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package searchengine.services.components;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Обход сайта в его собственном {@link ForkJoinPool}. Страница передаётся пулу только после
+ * выдачи разрешений, поэтому ожидающие страницы не занимают потоки пула, а пул не запускает
+ * компенсирующие потоки сверх бюджета сайта. Обход завершается, когда обработаны все
+ * страницы, или при первой ошибке; ссылки, найденные после ошибки, не обходятся.
+ */
+@Slf4j
+final class ForkJoinSiteCrawl {
+
+    private final ForkJoinPool pool;
+    private final AtomicLong pending = new AtomicLong();
+    private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+    ForkJoinSiteCrawl(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * @return завершение обхода; при ошибке — с первой ошибкой обхода
+     */
+    CompletableFuture<Void> start(PageParser rootParser) {
+        fork(rootParser);
+        return done;
+    }
+
+    private void fork(PageParser parser) {
+        pending.incrementAndGet();
+        CompletableFuture<List<PageParser>> page;
+        try {
+            page = parser.crawlPageAsync(pool);
+        } catch (RuntimeException ex) {
+            page = CompletableFuture.failedFuture(ex);
+        }
+        page.whenComplete((subtasks, ex) -> {
+            try {
+                if (ex != null) {
+                    cancel(ex instanceof CompletionException && ex.getCause() != null
+                        ? ex.getCause() : ex);
+                } else if (!done.isDone()) {
+                    subtasks.forEach(this::fork);
+                }
+            } finally {
+                finishTask();
+            }
+        });
+    }
+
+    private void finishTask() {
+        if (pending.decrementAndGet() == 0) {
+            done.complete(null);
+        }
+    }
+
+    private void cancel(Throwable cause) {
+        if (done.completeExceptionally(cause)) {
+            log.info("Обход прерван: {}", cause.getMessage());
+        }
+    }
+}
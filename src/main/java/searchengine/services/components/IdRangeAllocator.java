@@ -0,0 +1,77 @@
+package searchengine.services.components;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import searchengine.config.CrawlerConfiguration;
+
+/**
+ * Выдача идентификаторов по схеме hi-lo. Из таблицы id_sequence одним запросом резервируется
+ * диапазон из {@code id-allocation-size} значений, после чего идентификаторы выдаются из памяти.
+ * Неиспользованный остаток диапазона при перезапуске теряется.
+ */
+@Component
+@RequiredArgsConstructor
+public class IdRangeAllocator {
+
+    public static final String LEMMA_SEQUENCE = "lemma";
+    private static final String RESERVE_SQL =
+        "UPDATE id_sequence SET next_val = LAST_INSERT_ID(next_val + ?) WHERE name = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final CrawlerConfiguration crawlerConfiguration;
+    private final Map<String, Range> ranges = new ConcurrentHashMap<>();
+
+    /**
+     * @param sequence имя последовательности в таблице id_sequence
+     * @return следующий свободный идентификатор
+     */
+    public long next(String sequence) {
+        Range range = ranges.computeIfAbsent(sequence, key -> new Range());
+        synchronized (range) {
+            if (range.next == range.limit) {
+                int size = Math.max(1, crawlerConfiguration.getBulkWriter().getIdAllocationSize());
+                range.limit = reserve(sequence, size);
+                range.next = range.limit - size;
+            }
+            return range.next++;
+        }
+    }
+
+    /**
+     * Метод сдвигает последовательность на {@code size} значений. Обновление и чтение
+     * {@code LAST_INSERT_ID()} выполняются в одном соединении.
+     *
+     * @return граница зарезервированного диапазона, не входящая в него
+     */
+    private long reserve(String sequence, int size) {
+        Long limit = jdbcTemplate.execute((ConnectionCallback<Long>) connection -> {
+            try (PreparedStatement update = connection.prepareStatement(RESERVE_SQL)) {
+                update.setInt(1, size);
+                update.setString(2, sequence);
+                if (update.executeUpdate() != 1) {
+                    throw new IllegalStateException(
+                        "Последовательность " + sequence + " не найдена");
+                }
+            }
+            try (Statement select = connection.createStatement();
+                ResultSet resultSet = select.executeQuery("SELECT LAST_INSERT_ID()")) {
+                resultSet.next();
+                return resultSet.getLong(1);
+            }
+        });
+        return limit;
+    }
+
+    private static final class Range {
+
+        private long next;
+        private long limit;
+    }
+}
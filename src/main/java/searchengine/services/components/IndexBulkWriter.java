@@ -0,0 +1,415 @@
+package searchengine.services.components;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import searchengine.config.CrawlerConfiguration;
+
+/**
+ * Пакетная запись таблиц lemma и indexing. Строки страниц и приращения частот их лемм копятся
+ * в общем буфере и записываются многострочными {@code INSERT}, когда набирается
+ * {@code batch-rows} строк или по таймеру раз в {@code flush-interval} миллисекунд. Приращения
+ * одной леммы от разных страниц складываются, а леммы записываются раньше строк indexing,
+ * которые на них ссылаются. Записи выполняются по одной, поэтому после возврата из
+ * {@link #flush()} в таблицах есть все добавленные до вызова строки. Вхождения лемм
+ * позиционного индекса записываются в той же строке.
+ *
+ * <p>Если многострочный оператор отклонён из-за данных, его строки записываются по одной, а
+ * строка, которую база данных не принимает, отбрасывается с записью в журнал: одна ошибочная
+ * строка не задерживает индекс остальных страниц. Если база данных недоступна, незаписанные
+ * строки возвращаются в буфер и записываются при следующем сбросе, а {@link #flush()}
+ * выбрасывает исключение: обход, дожидающийся записи индекса, не должен считать его
+ * сохранённым.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class IndexBulkWriter implements InitializingBean, DisposableBean {
+
+    private static final int STATEMENT_ROWS = 1000;
+    private static final String INSERT_PREFIX =
+        "INSERT INTO indexing (lemma_id, page_id, rating, positions) VALUES ";
+    private static final String UPSERT_LEMMA_PREFIX =
+        "INSERT INTO lemma (id, site_id, lemma, frequency) VALUES ";
+    private static final String UPSERT_LEMMA_SUFFIX =
+        " ON DUPLICATE KEY UPDATE frequency = frequency + VALUES(frequency)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final CrawlerConfiguration crawlerConfiguration;
+    private final Object writeLock = new Object();
+    private final AtomicLong rowsWritten = new AtomicLong();
+    private final AtomicLong writeNanos = new AtomicLong();
+    private final AtomicLong rowsDropped = new AtomicLong();
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(
+        runnable -> {
+            Thread thread = new Thread(runnable, "index-bulk-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    private RowBuffer buffer = new RowBuffer();
+    private RowBuffer writing;
+
+    @Override
+    public void afterPropertiesSet() {
+        long interval = Math.max(1, crawlerConfiguration.getBulkWriter().getFlushInterval());
+        timer.scheduleWithFixedDelay(this::flushByTimer, interval, interval,
+            TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        timer.shutdownNow();
+        flushByTimer();
+    }
+
+    /**
+     * Метод добавляет в буфер строки индекса одной страницы и увеличивает на единицу частоты
+     * её лемм. Отсутствующие в таблице lemma леммы вставляются с идентификатором из словаря
+     * сайта. Если буфер заполнен, он записывается в вызывающем потоке.
+     *
+     * @param siteId    идентификатор сайта страницы
+     * @param pageId    идентификатор сохранённой страницы
+     * @param lemmas    различные леммы страницы
+     * @param ratings   ранги лемм в том же порядке
+     * @param positions сжатые вхождения лемм {@link LemmaPositions} в том же порядке или
+     *                  {@code null}, если позиционный индекс выключен
+     */
+    public void add(long siteId, long pageId, List<LemmaInfo> lemmas, float[] ratings,
+        byte[][] positions) {
+        boolean full;
+        synchronized (this) {
+            buffer.add(siteId, pageId, lemmas, ratings, positions);
+            full = buffer.size >= crawlerConfiguration.getBulkWriter().getBatchRows();
+        }
+        if (full) {
+            flush();
+        }
+    }
+
+    /**
+     * Метод записывает накопленные строки и дожидается окончания записей, начатых другими
+     * потоками.
+     *
+     * @throws org.springframework.dao.DataAccessException если строки не записаны; они
+     *                                                     остаются в буфере
+     */
+    public void flush() {
+        synchronized (writeLock) {
+            RowBuffer rows;
+            synchronized (this) {
+                if (buffer.size == 0 && buffer.lemmas.isEmpty()) {
+                    return;
+                }
+                rows = buffer;
+                buffer = new RowBuffer();
+            }
+            write(rows);
+        }
+    }
+
+    /**
+     * Метод удаляет из буфера ещё не записанные строки сайта, данные которого удаляются.
+     */
+    public synchronized void discardSite(long siteId) {
+        buffer.removeSite(siteId);
+        if (writing != null) {
+            writing.discardedSiteIds.add(siteId);
+        }
+    }
+
+    public long getRowsWritten() {
+        return rowsWritten.get();
+    }
+
+    /**
+     * @return средняя скорость записи с момента запуска, строк в секунду
+     */
+    public long getRowsPerSecond() {
+        long nanos = writeNanos.get();
+        return nanos == 0 ? 0 : rowsWritten.get() * TimeUnit.SECONDS.toNanos(1) / nanos;
+    }
+
+    private void flushByTimer() {
+        try {
+            flush();
+        } catch (RuntimeException ex) {
+            log.error("Ошибка пакетной записи индекса, строк в буфере: {}", bufferedRows(), ex);
+        }
+    }
+
+    private synchronized int bufferedRows() {
+        return buffer.size;
+    }
+
+    /**
+     * Метод возвращает в начало буфера строки, начиная с {@code from}, и приращения частот,
+     * которые не удалось записать. Строки сайтов, удалённых за время записи, отбрасываются.
+     */
+    private synchronized void requeue(RowBuffer rows, int from) {
+        RowBuffer requeued = new RowBuffer();
+        requeued.addRange(rows, from, rows.size);
+        requeued.addRange(buffer, 0, buffer.size);
+        requeued.addLemmas(rows);
+        requeued.addLemmas(buffer);
+        for (long siteId : rows.discardedSiteIds) {
+            requeued.removeSite(siteId);
+        }
+        buffer = requeued;
+    }
+
+    private void write(RowBuffer rows) {
+        synchronized (this) {
+            writing = rows;
+        }
+        try {
+            writeStatements(rows);
+        } finally {
+            synchronized (this) {
+                writing = null;
+            }
+            if (rows.written < rows.size || !rows.lemmas.isEmpty()) {
+                requeue(rows, rows.written);
+            }
+        }
+    }
+
+    /**
+     * Метод записывает приращения частот и строки индекса многострочными {@code INSERT}.
+     * Каждый оператор фиксируется отдельно, поэтому при ошибке записанными остаются строки
+     * предыдущих операторов: записанные приращения удаляются из {@link RowBuffer#lemmas}, а
+     * число записанных строк индекса хранится в {@link RowBuffer#written}.
+     */
+    private void writeStatements(RowBuffer rows) {
+        long start = System.nanoTime();
+        int lemmaCount = rows.lemmas.size();
+        writeLemmas(rows);
+        for (int from = rows.written; from < rows.size; from += STATEMENT_ROWS) {
+            int count = Math.min(STATEMENT_ROWS, rows.size - from);
+            try {
+                insertIndexRows(rows, from, count);
+                rowsWritten.addAndGet(count);
+            } catch (DataAccessException ex) {
+                if (!isRejectedRow(ex)) {
+                    throw ex;
+                }
+                insertIndexRowsSingly(rows, from, count);
+            }
+            rows.written = from + count;
+        }
+        long nanos = System.nanoTime() - start;
+        writeNanos.addAndGet(nanos);
+        log.info("Записано строк индекса: {}, лемм: {} за {} мс ({} строк/с), всего {} "
+                + "({} строк/с), отброшено {}", rows.size, lemmaCount,
+            TimeUnit.NANOSECONDS.toMillis(nanos),
+            rows.size * TimeUnit.SECONDS.toNanos(1) / Math.max(1, nanos), getRowsWritten(),
+            getRowsPerSecond(), rowsDropped.get());
+    }
+
+    /**
+     * Метод записывает приращения частот лемм. Леммы сортируются, чтобы параллельные записи
+     * блокировали строки в одном порядке и не взаимоблокировались.
+     */
+    private void writeLemmas(RowBuffer rows) {
+        List<LemmaDelta> deltas = new ArrayList<>(rows.lemmas.values());
+        deltas.sort(Comparator.<LemmaDelta>comparingLong(delta -> delta.siteId)
+            .thenComparing(delta -> delta.lemma));
+        for (int from = 0; from < deltas.size(); from += STATEMENT_ROWS) {
+            List<LemmaDelta> batch = deltas.subList(from,
+                Math.min(from + STATEMENT_ROWS, deltas.size()));
+            try {
+                upsertLemmas(batch);
+            } catch (DataAccessException ex) {
+                if (!isRejectedRow(ex)) {
+                    throw ex;
+                }
+                upsertLemmasSingly(rows, batch);
+            }
+            batch.forEach(delta -> rows.lemmas.remove(delta.id));
+        }
+    }
+
+    private void upsertLemmasSingly(RowBuffer rows, List<LemmaDelta> batch) {
+        for (LemmaDelta delta : batch) {
+            try {
+                upsertLemmas(List.of(delta));
+            } catch (DataAccessException ex) {
+                if (!isRejectedRow(ex)) {
+                    throw ex;
+                }
+                rowsDropped.incrementAndGet();
+                log.error("Лемма {} сайта {} не записана и отброшена", delta.lemma,
+                    delta.siteId, ex);
+            }
+            rows.lemmas.remove(delta.id);
+        }
+    }
+
+    private void upsertLemmas(List<LemmaDelta> batch) {
+        StringBuilder sql = new StringBuilder(UPSERT_LEMMA_PREFIX);
+        Object[] arguments = new Object[batch.size() * 4];
+        for (int i = 0; i < batch.size(); i++) {
+            LemmaDelta delta = batch.get(i);
+            sql.append(i == 0 ? "(?, ?, ?, ?)" : ", (?, ?, ?, ?)");
+            arguments[4 * i] = delta.id;
+            arguments[4 * i + 1] = delta.siteId;
+            arguments[4 * i + 2] = delta.lemma;
+            arguments[4 * i + 3] = delta.count;
+        }
+        sql.append(UPSERT_LEMMA_SUFFIX);
+        jdbcTemplate.update(sql.toString(), arguments);
+    }
+
+    private void insertIndexRowsSingly(RowBuffer rows, int from, int count) {
+        for (int i = from; i < from + count; i++) {
+            try {
+                insertIndexRows(rows, i, 1);
+                rowsWritten.incrementAndGet();
+            } catch (DataAccessException ex) {
+                if (!isRejectedRow(ex)) {
+                    throw ex;
+                }
+                rowsDropped.incrementAndGet();
+                log.error("Строка индекса леммы {} страницы {} не записана и отброшена",
+                    rows.lemmaIds[i], rows.pageIds[i], ex);
+            }
+            rows.written = i + 1;
+        }
+    }
+
+    private void insertIndexRows(RowBuffer rows, int from, int count) {
+        StringBuilder sql = new StringBuilder(INSERT_PREFIX.length() + count * 12)
+            .append(INSERT_PREFIX);
+        Object[] arguments = new Object[count * 4];
+        for (int i = 0; i < count; i++) {
+            sql.append(i == 0 ? "(?, ?, ?, ?)" : ", (?, ?, ?, ?)");
+            arguments[4 * i] = rows.lemmaIds[from + i];
+            arguments[4 * i + 1] = rows.pageIds[from + i];
+            arguments[4 * i + 2] = rows.ratings[from + i];
+            arguments[4 * i + 3] = rows.positions[from + i];
+        }
+        jdbcTemplate.update(sql.toString(), arguments);
+    }
+
+    /**
+     * @return {@code true}, если оператор отклонён из-за записываемых данных; при потере
+     * соединения или временной ошибке строки не отбрасываются
+     */
+    private static boolean isRejectedRow(DataAccessException ex) {
+        return !(ex instanceof TransientDataAccessException
+            || ex instanceof RecoverableDataAccessException
+            || ex instanceof DataAccessResourceFailureException);
+    }
+
+    /**
+     * Приращение частоты леммы сайта, накопленное страницами буфера.
+     */
+    @RequiredArgsConstructor
+    private static final class LemmaDelta {
+
+        private final long siteId;
+        private final long id;
+        private final String lemma;
+        private int count;
+    }
+
+    /**
+     * Буфер строк индекса в параллельных массивах примитивов.
+     */
+    private static final class RowBuffer {
+
+        private long[] siteIds = new long[256];
+        private long[] pageIds = new long[256];
+        private long[] lemmaIds = new long[256];
+        private float[] ratings = new float[256];
+        private byte[][] positions = new byte[256][];
+        private int size;
+        private int written;
+        private final Map<Long, LemmaDelta> lemmas = new HashMap<>();
+        private final Set<Long> discardedSiteIds = new HashSet<>();
+
+        private void add(long siteId, long pageId, List<LemmaInfo> pageLemmas,
+            float[] pageRatings, byte[][] pagePositions) {
+            int count = pageLemmas.size();
+            ensureCapacity(size + count);
+            Arrays.fill(siteIds, size, size + count, siteId);
+            Arrays.fill(pageIds, size, size + count, pageId);
+            for (int i = 0; i < count; i++) {
+                LemmaInfo lemma = pageLemmas.get(i);
+                lemmaIds[size + i] = lemma.getId();
+                addLemma(siteId, lemma.getId(), lemma.getLemma(), 1);
+            }
+            System.arraycopy(pageRatings, 0, ratings, size, count);
+            if (pagePositions != null) {
+                System.arraycopy(pagePositions, 0, positions, size, count);
+            }
+            size += count;
+        }
+
+        private void addRange(RowBuffer rows, int from, int to) {
+            int count = to - from;
+            ensureCapacity(size + count);
+            System.arraycopy(rows.siteIds, from, siteIds, size, count);
+            System.arraycopy(rows.pageIds, from, pageIds, size, count);
+            System.arraycopy(rows.lemmaIds, from, lemmaIds, size, count);
+            System.arraycopy(rows.ratings, from, ratings, size, count);
+            System.arraycopy(rows.positions, from, positions, size, count);
+            size += count;
+        }
+
+        private void addLemmas(RowBuffer rows) {
+            rows.lemmas.values().forEach(delta ->
+                addLemma(delta.siteId, delta.id, delta.lemma, delta.count));
+        }
+
+        private void addLemma(long siteId, long id, String lemma, int count) {
+            lemmas.computeIfAbsent(id, key -> new LemmaDelta(siteId, id, lemma)).count += count;
+        }
+
+        private void ensureCapacity(int required) {
+            if (required > lemmaIds.length) {
+                int capacity = Math.max(lemmaIds.length * 2, required);
+                siteIds = Arrays.copyOf(siteIds, capacity);
+                pageIds = Arrays.copyOf(pageIds, capacity);
+                lemmaIds = Arrays.copyOf(lemmaIds, capacity);
+                ratings = Arrays.copyOf(ratings, capacity);
+                positions = Arrays.copyOf(positions, capacity);
+            }
+        }
+
+        private void removeSite(long siteId) {
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                if (siteIds[i] != siteId) {
+                    siteIds[kept] = siteIds[i];
+                    pageIds[kept] = pageIds[i];
+                    lemmaIds[kept] = lemmaIds[i];
+                    ratings[kept] = ratings[i];
+                    positions[kept] = positions[i];
+                    kept++;
+                }
+            }
+            Arrays.fill(positions, kept, size, null);
+            size = kept;
+            lemmas.values().removeIf(delta -> delta.siteId == siteId);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package searchengine.services.components;
+
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.stereotype.Component;
+
+/**
+ * Счётчик поколений поискового индекса. Увеличивается при каждом изменении данных сайта, чтобы
+ * кэши поиска могли отличить устаревшие результаты.
+ */
+@Component
+public class IndexGeneration {
+
+    private final AtomicLong generation = new AtomicLong();
+
+    public long current() {
+        return generation.get();
+    }
+
+    public void bump() {
+        generation.incrementAndGet();
+    }
+}
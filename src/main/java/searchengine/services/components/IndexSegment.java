@@ -0,0 +1,204 @@
+package searchengine.services.components;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Неизменяемый сегмент индекса сайта, открытый через отображение файла в память. Файл состоит из
+ * заголовка, таблицы лемм фиксированной ширины, упорядоченной по идентификатору леммы, области
+ * текстов лемм и области вхождений. Вхождения леммы хранятся парами varint: разность с
+ * предыдущим идентификатором страницы и ранг в фиксированной точке с шагом {@code 1/RATING_SCALE}.
+ * <p>Чтение выполняется только абсолютными методами буфера, поэтому сегмент потокобезопасен.
+ * Распакованные списки вхождений хранятся в LRU-кэше сегмента с ограничением по приблизительному
+ * объёму: частые леммы запросов распаковываются один раз, а не при каждом поиске. Сегмент
+ * неизменяем, поэтому кэш не устаревает и удаляется вместе с сегментом.
+ */
+public final class IndexSegment {
+
+    static final int MAGIC = 0x53454731;
+    static final int VERSION = 1;
+    static final int RATING_SCALE = 16;
+    static final int HEADER_SIZE = 48;
+    static final int LEMMA_RECORD_SIZE = 32;
+    private static final int CACHED_LIST_OVERHEAD = 96;
+
+    private final MappedByteBuffer buffer;
+    private final long siteId;
+    private final String siteUrl;
+    private final int lemmaCount;
+    private final int tableOffset;
+    private final int textOffset;
+    private final int postingsOffset;
+    private final long cacheMaxWeight;
+    private final LinkedHashMap<Long, PostingList> decoded = new LinkedHashMap<>(16, 0.75f, true);
+    private long decodedWeight;
+
+    private IndexSegment(MappedByteBuffer buffer, long cacheMaxWeight) throws IOException {
+        this.buffer = buffer;
+        this.cacheMaxWeight = cacheMaxWeight;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Файл не является сегментом индекса");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Неподдерживаемая версия сегмента: " + buffer.getInt(4));
+        }
+        this.siteId = buffer.getLong(8);
+        this.lemmaCount = buffer.getInt(16);
+        this.tableOffset = buffer.getInt(20);
+        this.textOffset = buffer.getInt(24);
+        this.postingsOffset = buffer.getInt(28);
+        this.siteUrl = readString(HEADER_SIZE, buffer.getInt(32));
+    }
+
+    /**
+     * Метод отображает файл сегмента в память. Канал закрывается сразу после отображения,
+     * отображение остаётся действительным до сборки сегмента сборщиком мусора.
+     *
+     * @param cacheMaxWeight наибольший приблизительный объём распакованных списков вхождений в
+     *                       байтах; 0 отключает кэш
+     */
+    public static IndexSegment open(Path path, long cacheMaxWeight) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Сегмент больше 2 ГБ: " + path);
+            }
+            return new IndexSegment(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()),
+                cacheMaxWeight);
+        }
+    }
+
+    public long getSiteId() {
+        return siteId;
+    }
+
+    public String getSiteUrl() {
+        return siteUrl;
+    }
+
+    public int getLemmaCount() {
+        return lemmaCount;
+    }
+
+    /**
+     * Метод передаёт потребителю все леммы сегмента с их идентификаторами и частотами.
+     */
+    public void forEachLemma(Consumer<LemmaInfo> consumer) {
+        for (int i = 0; i < lemmaCount; i++) {
+            int record = tableOffset + i * LEMMA_RECORD_SIZE;
+            String lemma = readString(textOffset + buffer.getInt(record + 24),
+                buffer.getInt(record + 28));
+            consumer.accept(new LemmaInfo(buffer.getLong(record), lemma, buffer.getInt(record + 8)));
+        }
+    }
+
+    /**
+     * Метод возвращает вхождения леммы из кэша, а при промахе находит лемму в таблице двоичным
+     * поиском и распаковывает её вхождения. Распаковка выполняется вне блокировки кэша.
+     *
+     * @param lemmaId идентификатор леммы
+     * @return список вхождений, пустой если лемма не встречается
+     */
+    public PostingList readPostings(long lemmaId) {
+        synchronized (decoded) {
+            PostingList cached = decoded.get(lemmaId);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        PostingList postings = decodePostings(lemmaId);
+        cache(lemmaId, postings);
+        return postings;
+    }
+
+    private void cache(long lemmaId, PostingList postings) {
+        long weight = weigh(postings);
+        if (weight > cacheMaxWeight) {
+            return;
+        }
+        synchronized (decoded) {
+            PostingList previous = decoded.put(lemmaId, postings);
+            decodedWeight += weight - (previous == null ? 0 : weigh(previous));
+            Iterator<Map.Entry<Long, PostingList>> eldest = decoded.entrySet().iterator();
+            while (decodedWeight > cacheMaxWeight && eldest.hasNext()) {
+                decodedWeight -= weigh(eldest.next().getValue());
+                eldest.remove();
+            }
+        }
+    }
+
+    private static long weigh(PostingList postings) {
+        return CACHED_LIST_OVERHEAD + (long) postings.size() * (Character.BYTES + Float.BYTES);
+    }
+
+    private PostingList decodePostings(long lemmaId) {
+        int record = findRecord(lemmaId);
+        if (record < 0) {
+            return PostingList.EMPTY;
+        }
+        int count = buffer.getInt(record + 12);
+        int position = postingsOffset + buffer.getInt(record + 16);
+        PostingList.Builder builder = new PostingList.Builder();
+        long pageId = 0;
+        for (int i = 0; i < count; i++) {
+            long delta = readVarint(position);
+            position += varintSize(delta);
+            long rating = readVarint(position);
+            position += varintSize(rating);
+            pageId += delta;
+            builder.add(pageId, (float) rating / RATING_SCALE);
+        }
+        return builder.build();
+    }
+
+    private int findRecord(long lemmaId) {
+        int low = 0;
+        int high = lemmaCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int record = tableOffset + middle * LEMMA_RECORD_SIZE;
+            long middleId = buffer.getLong(record);
+            if (middleId < lemmaId) {
+                low = middle + 1;
+            } else if (middleId > lemmaId) {
+                high = middle - 1;
+            } else {
+                return record;
+            }
+        }
+        return -1;
+    }
+
+    private long readVarint(int position) {
+        long value = 0;
+        int shift = 0;
+        byte current;
+        do {
+            current = buffer.get(position++);
+            value |= (long) (current & 0x7F) << shift;
+            shift += 7;
+        } while (current < 0);
+        return value;
+    }
+
+    private String readString(int position, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(position, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static int varintSize(long value) {
+        int size = 1;
+        while ((value >>>= 7) != 0) {
+            size++;
+        }
+        return size;
+    }
+}
@@ -0,0 +1,90 @@
+package searchengine.services.components;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import searchengine.config.SearchConfiguration;
+import searchengine.model.SiteEntity;
+import searchengine.repositories.SiteRepository;
+
+/**
+ * Открытые сегменты индекса по сайтам. Файл сегмента открывается при первом обращении к сайту
+ * и используется, только если он выгружен для сайта с тем же адресом: после пересоздания схемы
+ * идентификаторы сайтов могут достаться другим сайтам.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class IndexSegmentStore {
+
+    private static final String SEGMENT_FILE_PATTERN = "site-%d.seg";
+
+    private final SearchConfiguration searchConfiguration;
+    private final SiteRepository siteRepository;
+    private final Map<Long, Optional<IndexSegment>> segments = new ConcurrentHashMap<>();
+
+    /**
+     * @return сегмент сайта или {@code null}, если сегменты отключены или сайт не выгружен
+     */
+    public IndexSegment getSegment(Long siteId) {
+        if (!searchConfiguration.isSegmentsEnabled()) {
+            return null;
+        }
+        return segments.computeIfAbsent(siteId, this::openSegment).orElse(null);
+    }
+
+    /**
+     * Метод подключает только что записанный сегмент вместо предыдущего.
+     */
+    public void install(Long siteId, Path path) throws IOException {
+        segments.put(siteId, Optional.of(IndexSegment.open(path,
+            searchConfiguration.getSegmentCacheMaxWeight())));
+    }
+
+    /**
+     * Метод отключает и удаляет сегмент сайта, данные которого начали изменяться. Уже начатые
+     * запросы дочитывают прежнее отображение.
+     */
+    public void delete(Long siteId) {
+        segments.put(siteId, Optional.empty());
+        try {
+            Files.deleteIfExists(getSegmentPath(siteId));
+        } catch (IOException ex) {
+            log.warn("Не удалось удалить сегмент сайта {}", siteId, ex);
+        }
+    }
+
+    public Path getSegmentPath(Long siteId) {
+        return Paths.get(searchConfiguration.getSegmentDirectory(),
+            String.format(SEGMENT_FILE_PATTERN, siteId));
+    }
+
+    private Optional<IndexSegment> openSegment(Long siteId) {
+        Path path = getSegmentPath(siteId);
+        if (!Files.isRegularFile(path)) {
+            return Optional.empty();
+        }
+        try {
+            IndexSegment segment = IndexSegment.open(path,
+                searchConfiguration.getSegmentCacheMaxWeight());
+            Optional<String> siteUrl = siteRepository.findById(siteId).map(SiteEntity::getUrl);
+            if (segment.getSiteId() != siteId || !siteUrl.equals(Optional.of(segment.getSiteUrl()))) {
+                log.info("Сегмент {} принадлежит другому сайту и будет удалён", path);
+                Files.deleteIfExists(path);
+                return Optional.empty();
+            }
+            log.info("Сегмент сайта {} открыт: {} лемм", siteId, segment.getLemmaCount());
+            return Optional.of(segment);
+        } catch (IOException ex) {
+            log.error("Ошибка чтения сегмента {}", path, ex);
+            return Optional.empty();
+        }
+    }
+}
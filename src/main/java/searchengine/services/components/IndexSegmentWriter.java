@@ -0,0 +1,161 @@
+package searchengine.services.components;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import searchengine.config.SearchConfiguration;
+import searchengine.model.SiteEntity;
+import searchengine.repositories.IndexRepository;
+import searchengine.repositories.LemmaRepository;
+import searchengine.repositories.projections.LemmaProjection;
+import searchengine.repositories.projections.PostingProjection;
+
+/**
+ * Выгрузка индекса сайта из таблиц lemma и indexing в файл сегмента формата
+ * {@link IndexSegment}. Файл пишется во временный и атомарно заменяет предыдущий сегмент.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class IndexSegmentWriter {
+
+    private final SearchConfiguration searchConfiguration;
+    private final LemmaRepository lemmaRepository;
+    private final IndexRepository indexRepository;
+    private final IndexSegmentStore indexSegmentStore;
+    private final InvertedIndex invertedIndex;
+    private final IndexBulkWriter indexBulkWriter;
+
+    /**
+     * Метод выгружает сегмент проиндексированного сайта и подключает его к поиску. Ошибка записи
+     * не прерывает индексацию: поиск по сайту продолжит читать базу данных. Перед выгрузкой
+     * в таблицу indexing дописываются строки из буфера пакетной записи.
+     *
+     * @param siteEntity проиндексированный сайт
+     */
+    public void export(SiteEntity siteEntity) {
+        if (!searchConfiguration.isSegmentsEnabled()) {
+            return;
+        }
+        indexBulkWriter.flush();
+        long start = System.currentTimeMillis();
+        Long siteId = siteEntity.getId();
+        Path path = indexSegmentStore.getSegmentPath(siteId);
+        try {
+            Files.createDirectories(path.getParent());
+            Path tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+            write(siteEntity, tempPath);
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+            indexSegmentStore.install(siteId, path);
+            invertedIndex.evictSite(siteId);
+            log.info("Сегмент сайта {} записан: {} байт за {} мс", siteEntity.getUrl(),
+                Files.size(path), System.currentTimeMillis() - start);
+        } catch (IOException ex) {
+            log.error("Ошибка записи сегмента сайта {}", siteEntity.getUrl(), ex);
+        }
+    }
+
+    private void write(SiteEntity siteEntity, Path path) throws IOException {
+        List<LemmaProjection> lemmas = new ArrayList<>(
+            lemmaRepository.findAllBySiteId(siteEntity.getId()));
+        lemmas.sort(Comparator.comparing(LemmaProjection::getId));
+        Map<Long, PostingList> postings = loadPostings(siteEntity.getId());
+
+        byte[] url = siteEntity.getUrl().getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream texts = new ByteArrayOutputStream();
+        VarintOutput postingBytes = new VarintOutput();
+        int[] textOffsets = new int[lemmas.size()];
+        int[] textLengths = new int[lemmas.size()];
+        int[] postingOffsets = new int[lemmas.size()];
+        int[] postingCounts = new int[lemmas.size()];
+        for (int i = 0; i < lemmas.size(); i++) {
+            byte[] text = lemmas.get(i).getLemma().getBytes(StandardCharsets.UTF_8);
+            textOffsets[i] = texts.size();
+            textLengths[i] = text.length;
+            texts.write(text);
+            PostingList postingList = postings.getOrDefault(lemmas.get(i).getId(),
+                PostingList.EMPTY);
+            postingOffsets[i] = postingBytes.size();
+            postingCounts[i] = postingList.size();
+            writePostings(postingList, postingBytes);
+        }
+
+        long tableOffset = IndexSegment.HEADER_SIZE + url.length;
+        long textOffset = tableOffset + (long) lemmas.size() * IndexSegment.LEMMA_RECORD_SIZE;
+        long postingsOffset = textOffset + texts.size();
+        if (postingsOffset + postingBytes.size() > Integer.MAX_VALUE) {
+            throw new IOException("Сегмент сайта больше 2 ГБ: " + siteEntity.getUrl());
+        }
+        try (DataOutputStream output = new DataOutputStream(
+            new BufferedOutputStream(Files.newOutputStream(path)))) {
+            output.writeInt(IndexSegment.MAGIC);
+            output.writeInt(IndexSegment.VERSION);
+            output.writeLong(siteEntity.getId());
+            output.writeInt(lemmas.size());
+            output.writeInt((int) tableOffset);
+            output.writeInt((int) textOffset);
+            output.writeInt((int) postingsOffset);
+            output.writeInt(url.length);
+            output.write(new byte[IndexSegment.HEADER_SIZE - 36]);
+            output.write(url);
+            for (int i = 0; i < lemmas.size(); i++) {
+                output.writeLong(lemmas.get(i).getId());
+                output.writeInt(lemmas.get(i).getFrequency());
+                output.writeInt(postingCounts[i]);
+                output.writeInt(postingOffsets[i]);
+                output.writeInt(0);
+                output.writeInt(textOffsets[i]);
+                output.writeInt(textLengths[i]);
+            }
+            texts.writeTo(output);
+            postingBytes.writeTo(output);
+        }
+    }
+
+    private Map<Long, PostingList> loadPostings(Long siteId) {
+        Map<Long, PostingList.Builder> builders = new HashMap<>();
+        for (PostingProjection row : indexRepository.findPostingsBySiteId(siteId)) {
+            builders.computeIfAbsent(row.getLemmaId(), id -> new PostingList.Builder())
+                .add(row.getPageId(), row.getRating());
+        }
+        Map<Long, PostingList> postings = new HashMap<>(builders.size() * 4 / 3 + 1);
+        builders.forEach((lemmaId, builder) -> postings.put(lemmaId, builder.build()));
+        return postings;
+    }
+
+    private static void writePostings(PostingList postingList, VarintOutput output) {
+        PostingList.RatingCursor ratingCursor = postingList.ratingCursor();
+        int[] previous = {0};
+        postingList.pageIds().forEach(pageId -> {
+            output.writeVarint(pageId - previous[0]);
+            output.writeVarint(Math.max(0,
+                Math.round(ratingCursor.rating(pageId) * IndexSegment.RATING_SCALE)));
+            previous[0] = pageId;
+        });
+    }
+
+    private static final class VarintOutput extends ByteArrayOutputStream {
+
+        void writeVarint(long value) {
+            while ((value & ~0x7FL) != 0) {
+                write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package searchengine.services.components;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.stereotype.Component;
+import searchengine.model.SiteEntity;
+import searchengine.repositories.SiteRepository;
+
+/**
+ * Загрузка словарей и индексов сайтов в память вне времени поисковых запросов. Поиск по сайту
+ * ограничен {@code search-settings.timeout}, и большой сайт, индекс которого загружается в
+ * первом запросе, не успевает ответить, пока загрузка не закончится. Поэтому сайты
+ * загружаются в отдельном потоке при запуске приложения и после окончания обхода.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class IndexWarmer implements InitializingBean, DisposableBean {
+
+    private final SiteRepository siteRepository;
+    private final LemmaDictionary lemmaDictionary;
+    private final InvertedIndex invertedIndex;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "index-warmer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Override
+    public void afterPropertiesSet() {
+        executor.execute(() -> siteRepository.getAllSite().stream()
+            .map(SiteEntity::getId)
+            .forEach(this::warmUp));
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Метод ставит загрузку сайта в очередь и сразу возвращает управление.
+     */
+    public void warmUpAsync(Long siteId) {
+        executor.execute(() -> warmUp(siteId));
+    }
+
+    private void warmUp(Long siteId) {
+        long start = System.currentTimeMillis();
+        try {
+            lemmaDictionary.warmUp(siteId);
+            invertedIndex.warmUp(siteId);
+            log.info("Индекс сайта {} подготовлен к поиску за {} мс", siteId,
+                System.currentTimeMillis() - start);
+        } catch (RuntimeException ex) {
+            log.warn("Не удалось заранее загрузить индекс сайта {}", siteId, ex);
+        }
+    }
+}
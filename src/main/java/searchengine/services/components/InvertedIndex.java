@@ -0,0 +1,99 @@
+package searchengine.services.components;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import searchengine.repositories.IndexRepository;
+import searchengine.repositories.projections.PostingProjection;
+
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class InvertedIndex {
+
+    private final IndexRepository indexRepository;
+    private final IndexSegmentStore indexSegmentStore;
+    private final IndexBulkWriter indexBulkWriter;
+    private final Map<Long, Map<Long, PostingList>> sitePostings = new ConcurrentHashMap<>();
+
+    /**
+     * Метод возвращает список вхождений леммы на страницах сайта. При первом обращении к сайту его
+     * индекс загружается из таблицы indexing одним запросом, после записи буфера
+     * {@link IndexBulkWriter}; обычно это заранее делает {@link IndexWarmer}. Если для сайта
+     * выгружен сегмент,
+     * вхождения читаются из отображённого в память файла без обращения к базе данных.
+     *
+     * @param siteId  идентификатор сайта
+     * @param lemmaId идентификатор леммы
+     * @return список вхождений, пустой если лемма не встречается
+     */
+    public PostingList getPostings(Long siteId, Long lemmaId) {
+        IndexSegment segment = indexSegmentStore.getSegment(siteId);
+        if (segment != null) {
+            return segment.readPostings(lemmaId);
+        }
+        return sitePostings.computeIfAbsent(siteId, this::loadSite)
+            .getOrDefault(lemmaId, PostingList.EMPTY);
+    }
+
+    /**
+     * Метод загружает индекс сайта заранее, чтобы первый запрос к сайту не тратил на загрузку
+     * своё время. Сайт с выгруженным сегментом только открывает его.
+     */
+    public void warmUp(Long siteId) {
+        if (indexSegmentStore.getSegment(siteId) == null) {
+            sitePostings.computeIfAbsent(siteId, this::loadSite);
+        }
+    }
+
+    /**
+     * Метод добавляет вхождение леммы, сохранённое индексатором. Если индекс сайта ещё не загружен,
+     * вхождение будет прочитано из базы данных при первой загрузке.
+     */
+    public void addPosting(Long siteId, Long lemmaId, Long pageId, Float rating) {
+        sitePostings.computeIfPresent(siteId, (id, postings) -> {
+            append(postings, lemmaId, pageId, rating);
+            return postings;
+        });
+    }
+
+    /**
+     * Метод удаляет вхождения страницы, строки которой удалены из таблицы indexing.
+     */
+    public void removePage(Long siteId, Long pageId, Collection<Long> lemmaIds) {
+        sitePostings.computeIfPresent(siteId, (id, postings) -> {
+            for (Long lemmaId : lemmaIds) {
+                postings.computeIfPresent(lemmaId, (key, current) -> current.without(pageId));
+            }
+            return postings;
+        });
+    }
+
+    public void evictSite(Long siteId) {
+        sitePostings.remove(siteId);
+    }
+
+    private Map<Long, PostingList> loadSite(Long siteId) {
+        long start = System.currentTimeMillis();
+        indexBulkWriter.flush();
+        Map<Long, PostingList.Builder> builders = new HashMap<>();
+        for (PostingProjection row : indexRepository.findPostingsBySiteId(siteId)) {
+            builders.computeIfAbsent(row.getLemmaId(), id -> new PostingList.Builder())
+                .add(row.getPageId(), row.getRating());
+        }
+        Map<Long, PostingList> postings = new ConcurrentHashMap<>(builders.size() * 4 / 3 + 1);
+        builders.forEach((lemmaId, builder) -> postings.put(lemmaId, builder.build()));
+        log.info("Индекс сайта {} загружен: {} лемм за {} мс", siteId, postings.size(),
+            System.currentTimeMillis() - start);
+        return postings;
+    }
+
+    private void append(Map<Long, PostingList> postings, Long lemmaId, long pageId, float rating) {
+        postings.compute(lemmaId, (id, current) ->
+            (current == null ? PostingList.EMPTY : current).with(pageId, rating));
+    }
+}
@@ -0,0 +1,115 @@
+package searchengine.services.components;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Число вхождений лемм в текст страницы: открытая хеш-таблица с линейным пробированием, где
+ * ключи — строки лемм, а счётчики хранятся в массиве {@code int} без упаковки.
+ */
+public final class LemmaCounter {
+
+    private String[] keys;
+    private int[] counts;
+    private int size;
+    private LemmaPositions positions;
+
+    public LemmaCounter() {
+        this(8);
+    }
+
+    public LemmaCounter(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize) * 4 / 3 + 1) << 1;
+        keys = new String[capacity];
+        counts = new int[capacity];
+    }
+
+    /**
+     * Метод увеличивает счётчик леммы на {@code count}.
+     */
+    public void add(String lemma, int count) {
+        if (size * 4 >= keys.length * 3) {
+            resize();
+        }
+        int slot = findSlot(keys, lemma);
+        if (keys[slot] == null) {
+            keys[slot] = lemma;
+            size++;
+        }
+        counts[slot] += count;
+    }
+
+    /**
+     * @return число вхождений леммы или 0
+     */
+    public int get(String lemma) {
+        int slot = findSlot(keys, lemma);
+        return keys[slot] == null ? 0 : counts[slot];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return вхождения лемм в текст страницы или {@code null}, если позиционный индекс
+     * выключен
+     */
+    public LemmaPositions getPositions() {
+        return positions;
+    }
+
+    public void setPositions(LemmaPositions positions) {
+        this.positions = positions;
+    }
+
+    /**
+     * @return леммы в порядке хранения
+     */
+    public List<String> lemmas() {
+        List<String> lemmas = new ArrayList<>(size);
+        for (String key : keys) {
+            if (key != null) {
+                lemmas.add(key);
+            }
+        }
+        return lemmas;
+    }
+
+    public void forEach(ObjIntConsumer<String> action) {
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != null) {
+                action.accept(keys[slot], counts[slot]);
+            }
+        }
+    }
+
+    private void resize() {
+        String[] oldKeys = keys;
+        int[] oldCounts = counts;
+        keys = new String[oldKeys.length * 2];
+        counts = new int[oldKeys.length * 2];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int slot = findSlot(keys, oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+
+    private static int findSlot(String[] keys, String lemma) {
+        int mask = keys.length - 1;
+        int hash = lemma.hashCode();
+        int slot = (hash ^ hash >>> 16) & mask;
+        while (keys[slot] != null && !keys[slot].equals(lemma)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+}
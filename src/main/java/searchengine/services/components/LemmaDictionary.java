@@ -0,0 +1,102 @@
+package searchengine.services.components;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import searchengine.repositories.LemmaRepository;
+import searchengine.repositories.projections.LemmaProjection;
+
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class LemmaDictionary {
+
+    private final LemmaRepository lemmaRepository;
+    private final IndexSegmentStore indexSegmentStore;
+    private final Map<Long, Map<String, LemmaInfo>> siteLemmas = new ConcurrentHashMap<>();
+
+    /**
+     * Метод за один вызов находит в словаре сайта все переданные леммы. При первом обращении к
+     * сайту словарь загружается из сегмента индекса, а без него из таблицы lemma одним запросом.
+     *
+     * @param siteId идентификатор сайта
+     * @param lemmas леммы запроса или страницы
+     * @return найденные записи словаря; отсутствующие леммы в результат не попадают
+     */
+    public Map<String, LemmaInfo> resolve(Long siteId, Collection<String> lemmas) {
+        Map<String, LemmaInfo> dictionary = getSiteLemmas(siteId);
+        Map<String, LemmaInfo> resolved = new HashMap<>(lemmas.size() * 4 / 3 + 1);
+        for (String lemma : lemmas) {
+            LemmaInfo lemmaInfo = dictionary.get(lemma);
+            if (lemmaInfo != null) {
+                resolved.put(lemma, lemmaInfo);
+            }
+        }
+        return resolved;
+    }
+
+    /**
+     * Метод находит лемму в словаре сайта, а отсутствующую добавляет с нулевой частотой и новым
+     * идентификатором. Из параллельных вызовов для одной леммы в словарь попадает только
+     * первый, и все строки таблицы lemma вставляются с его идентификатором. Идентификатор
+     * выдаётся вне блокировок словаря: при исчерпании диапазона {@link IdRangeAllocator}
+     * обращается к базе данных, и потоки с другими леммами не должны этого ждать.
+     * Идентификаторы проигравших вызовов не используются.
+     */
+    public LemmaInfo getOrCreate(Long siteId, String lemma, LongSupplier idSupplier) {
+        Map<String, LemmaInfo> dictionary = getSiteLemmas(siteId);
+        LemmaInfo lemmaInfo = dictionary.get(lemma);
+        if (lemmaInfo != null) {
+            return lemmaInfo;
+        }
+        LemmaInfo created = new LemmaInfo(idSupplier.getAsLong(), lemma, 0);
+        lemmaInfo = dictionary.putIfAbsent(lemma, created);
+        return lemmaInfo == null ? created : lemmaInfo;
+    }
+
+    /**
+     * Метод загружает словарь сайта заранее, вне времени поискового запроса.
+     */
+    public void warmUp(Long siteId) {
+        getSiteLemmas(siteId);
+    }
+
+    public Collection<LemmaInfo> getLemmas(Long siteId) {
+        return Collections.unmodifiableCollection(getSiteLemmas(siteId).values());
+    }
+
+    public int size(Long siteId) {
+        return getSiteLemmas(siteId).size();
+    }
+
+    public void evictSite(Long siteId) {
+        siteLemmas.remove(siteId);
+    }
+
+    private Map<String, LemmaInfo> getSiteLemmas(Long siteId) {
+        return siteLemmas.computeIfAbsent(siteId, this::loadSite);
+    }
+
+    private Map<String, LemmaInfo> loadSite(Long siteId) {
+        Map<String, LemmaInfo> dictionary = new ConcurrentHashMap<>();
+        IndexSegment segment = indexSegmentStore.getSegment(siteId);
+        if (segment != null) {
+            segment.forEachLemma(lemmaInfo -> dictionary.put(lemmaInfo.getLemma(), lemmaInfo));
+            log.info("Словарь лемм сайта {} загружен из сегмента: {} лемм", siteId,
+                dictionary.size());
+            return dictionary;
+        }
+        for (LemmaProjection row : lemmaRepository.findAllBySiteId(siteId)) {
+            dictionary.put(row.getLemma(),
+                new LemmaInfo(row.getId(), row.getLemma(), row.getFrequency()));
+        }
+        log.info("Словарь лемм сайта {} загружен: {} лемм", siteId, dictionary.size());
+        return dictionary;
+    }
+}
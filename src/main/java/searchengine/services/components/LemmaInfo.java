@@ -0,0 +1,34 @@
+package searchengine.services.components;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.Getter;
+
+/**
+ * Запись словаря лемм сайта: идентификатор строки таблицы lemma и текущая частота леммы.
+ */
+public class LemmaInfo {
+
+    @Getter
+    private final long id;
+    @Getter
+    private final String lemma;
+    private final AtomicInteger frequency;
+
+    public LemmaInfo(long id, String lemma, int frequency) {
+        this.id = id;
+        this.lemma = lemma;
+        this.frequency = new AtomicInteger(frequency);
+    }
+
+    public int getFrequency() {
+        return frequency.get();
+    }
+
+    public void incrementFrequency() {
+        frequency.incrementAndGet();
+    }
+
+    public void decrementFrequency() {
+        frequency.decrementAndGet();
+    }
+}
@@ -0,0 +1,130 @@
+package searchengine.services.components;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Вхождения лемм в текст страницы: порядковый номер словоформы и смещение её первого символа в
+ * колонке text. Номера нужны для поиска фраз, смещения — для сниппетов без повторного разбора
+ * текста.
+ *
+ * <p>Для записи в колонку positions таблицы indexing вхождения одной леммы кодируются
+ * разностями соседних значений в формате varint: число вхождений, затем пары «приращение
+ * номера, приращение смещения».
+ */
+public final class LemmaPositions {
+
+    private final Map<String, OccurrenceList> occurrences = new HashMap<>();
+
+    /**
+     * Метод добавляет вхождение леммы. Вхождения передаются в порядке следования в тексте.
+     */
+    void add(String lemma, int position, int offset) {
+        occurrences.computeIfAbsent(lemma, key -> new OccurrenceList()).add(position, offset);
+    }
+
+    /**
+     * @return вхождения леммы или {@code null}, если лемма в тексте не встречается
+     */
+    public Occurrences get(String lemma) {
+        OccurrenceList list = occurrences.get(lemma);
+        return list == null ? null : new Occurrences(list.positions, list.offsets, list.count);
+    }
+
+    /**
+     * @return леммы, встречающиеся в тексте
+     */
+    public Set<String> lemmas() {
+        return Collections.unmodifiableSet(occurrences.keySet());
+    }
+
+    /**
+     * @return вхождения леммы в сжатом виде или {@code null}, если лемма в тексте не встречается
+     */
+    public byte[] encode(String lemma) {
+        Occurrences lemmaOccurrences = get(lemma);
+        return lemmaOccurrences == null ? null : encode(lemmaOccurrences);
+    }
+
+    public static byte[] encode(Occurrences occurrences) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(2 + occurrences.count() * 3);
+        writeVarint(out, occurrences.count());
+        int position = 0;
+        int offset = 0;
+        for (int i = 0; i < occurrences.count(); i++) {
+            writeVarint(out, occurrences.positions()[i] - position);
+            writeVarint(out, occurrences.offsets()[i] - offset);
+            position = occurrences.positions()[i];
+            offset = occurrences.offsets()[i];
+        }
+        return out.toByteArray();
+    }
+
+    public static Occurrences decode(byte[] data) {
+        int[] cursor = {0};
+        int count = readVarint(data, cursor);
+        int[] positions = new int[count];
+        int[] offsets = new int[count];
+        int position = 0;
+        int offset = 0;
+        for (int i = 0; i < count; i++) {
+            position += readVarint(data, cursor);
+            offset += readVarint(data, cursor);
+            positions[i] = position;
+            offsets[i] = offset;
+        }
+        return new Occurrences(positions, offsets, count);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.write(value & 0x7f | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarint(byte[] data, int[] cursor) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = data[cursor[0]++];
+            value |= (b & 0x7f) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    /**
+     * Вхождения одной леммы по возрастанию номера.
+     *
+     * @param positions номера словоформ в тексте
+     * @param offsets   смещения первых символов словоформ
+     * @param count     число используемых элементов массивов
+     */
+    public record Occurrences(int[] positions, int[] offsets, int count) {
+
+    }
+
+    private static final class OccurrenceList {
+
+        private int[] positions = new int[4];
+        private int[] offsets = new int[4];
+        private int count;
+
+        private void add(int position, int offset) {
+            if (count == positions.length) {
+                positions = Arrays.copyOf(positions, count * 2);
+                offsets = Arrays.copyOf(offsets, count * 2);
+            }
+            positions[count] = position;
+            offsets[count] = offset;
+            count++;
+        }
+    }
+}
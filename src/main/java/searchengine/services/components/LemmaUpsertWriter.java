@@ -0,0 +1,44 @@
+package searchengine.services.components;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Уменьшение частот лемм страницы, удалённой из индекса, без блокировки сайта. Частоты
+ * увеличиваются пакетно в {@link IndexBulkWriter}. Идентификаторы сортируются, чтобы
+ * параллельные запросы блокировали строки в одном порядке и не взаимоблокировались.
+ */
+@Component
+@RequiredArgsConstructor
+public class LemmaUpsertWriter {
+
+    private static final int BATCH_SIZE = 500;
+    private static final String DECREMENT_PREFIX =
+        "UPDATE lemma SET frequency = frequency - 1 WHERE id IN (";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Метод уменьшает на единицу частоту лемм страницы, удалённой из индекса.
+     *
+     * @param lemmaIds идентификаторы различных лемм страницы
+     */
+    public void decrement(Collection<Long> lemmaIds) {
+        List<Long> sortedIds = new ArrayList<>(lemmaIds);
+        sortedIds.sort(null);
+        for (int from = 0; from < sortedIds.size(); from += BATCH_SIZE) {
+            List<Long> batch = sortedIds.subList(from,
+                Math.min(from + BATCH_SIZE, sortedIds.size()));
+            StringBuilder sql = new StringBuilder(DECREMENT_PREFIX);
+            for (int i = 0; i < batch.size(); i++) {
+                sql.append(i == 0 ? "?" : ", ?");
+            }
+            sql.append(')');
+            jdbcTemplate.update(sql.toString(), batch.toArray());
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package searchengine.services.components;
+
+import java.util.List;
+
+/**
+ * Объединённые лучшие страницы нескольких сайтов и список сайтов, не ответивших вовремя.
+ *
+ * @param rankedPages      лучшие страницы всех ответивших сайтов
+ * @param unavailableSites имена сайтов, исключённых из выдачи
+ */
+public record MergedRanking(RankedPages rankedPages, List<String> unavailableSites) {
+}
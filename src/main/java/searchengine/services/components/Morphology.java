@@ -2,52 +2,84 @@ package searchengine.services.components;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
-import org.apache.lucene.morphology.LuceneMorphology;
 
-public record Morphology(LuceneMorphology luceneMorphology) {
+public record Morphology(WordFormCache wordFormCache) {
 
-    private static final String WORD_FORMS_EXCLUDE_REGEX = ".*\\s(СОЮЗ|МЕЖД|ПРЕДЛ|ЧАСТ)\\s?.*";
     private static final int SNIPPET_SIZE = 230;
+    private static final int SNIPPET_CONTEXT = 40;
     private static final int MAX_SIZE_SENTENCES = 150;
     private static final int MIN_SIZE_SENTENCES = 40;
 
-    public HashMap<String, Integer> collectLemmas(String text) {
-        String[] words = getCleanText(text).split("\\s+");
-        HashMap<String, Integer> lemmasCount = new HashMap<>();
-        for (String word : words) {
-            if (word.isBlank()) {
-                continue;
-            }
-            List<String> wordBaseForms = luceneMorphology.getMorphInfo(word);
-            String wordCheck = wordBaseForms.getFirst();
-            if (wordCheck.matches(WORD_FORMS_EXCLUDE_REGEX)) {
-                continue;
+    /**
+     * Метод считает леммы видимого текста страницы. Словоформы читаются за один проход
+     * {@link WordFormCounter}, и каждая различная словоформа разбирается один раз.
+     *
+     * @param text HTML-код страницы или простой текст, например поисковый запрос
+     * @return число вхождений каждой леммы, кроме союзов, междометий, предлогов и частиц
+     */
+    public LemmaCounter collectLemmas(String text) {
+        WordFormCounter wordForms = WordFormCounter.count(text);
+        LemmaCounter lemmasCount = new LemmaCounter(wordForms.size());
+        wordForms.forEach((word, count) -> {
+            WordFormCache.WordForm wordForm = wordFormCache.lookup(word);
+            if (!wordForm.excluded() && wordForm.lemma() != null) {
+                lemmasCount.add(wordForm.lemma(), count);
             }
-            List<String> wordNormalForms = luceneMorphology.getNormalForms(word);
-            if (wordNormalForms.isEmpty()) {
-                continue;
-            }
-            String lemma = wordNormalForms.getFirst();
+        });
+        return lemmasCount;
+    }
 
-            if (lemmasCount.containsKey(lemma)) {
-                lemmasCount.put(lemma, lemmasCount.get(lemma) + 1);
-            } else {
-                lemmasCount.put(lemma, 1);
-            }
+    /**
+     * Метод считает леммы страницы и, если передан текст страницы, собирает вхождения лемм в
+     * него для позиционного индекса.
+     *
+     * @param html HTML-код страницы
+     * @param text видимый текст страницы из колонки text или {@code null}
+     */
+    public LemmaCounter collectLemmas(String html, String text) {
+        LemmaCounter lemmasCount = collectLemmas(html);
+        if (text != null) {
+            lemmasCount.setPositions(collectPositions(text));
         }
         return lemmasCount;
     }
 
-    private String getCleanText(String text) {
-        return text.toLowerCase()
-            .replaceAll("[^а-яё\\s]", "")
-            .trim();
+    /**
+     * Метод находит вхождения лемм в текст. Номер получает каждая словоформа, в том числе
+     * союзы и предлоги, поэтому расстояния между словами фразы сохраняются.
+     *
+     * @param text простой текст без разметки: видимый текст страницы или запрос
+     */
+    public LemmaPositions collectPositions(String text) {
+        WordFormCounter wordForms = WordFormCounter.countWithTokens(text);
+        String[] lemmas = new String[wordForms.size()];
+        for (int entry = 0; entry < lemmas.length; entry++) {
+            WordFormCache.WordForm wordForm = wordFormCache.lookup(wordForms.wordForm(entry));
+            lemmas[entry] = wordForm.excluded() ? null : wordForm.lemma();
+        }
+        LemmaPositions positions = new LemmaPositions();
+        for (int token = 0; token < wordForms.tokenCount(); token++) {
+            String lemma = lemmas[wordForms.tokenEntry(token)];
+            if (lemma != null) {
+                positions.add(lemma, token, wordForms.tokenOffset(token));
+            }
+        }
+        return positions;
     }
 
     public String createSnippet(String content, List<String> queryLemmas) {
-        List<String> sentences = splitIntoSentences(content);
+        return createSnippet(splitIntoSentences(content), queryLemmas);
+    }
+
+    /**
+     * Метод строит сниппет по предложениям, заранее извлечённым из страницы при индексации.
+     *
+     * @param sentences   предложения текста страницы
+     * @param queryLemmas леммы поискового запроса
+     * @return сниппет с выделенными совпадениями
+     */
+    public String createSnippet(List<String> sentences, List<String> queryLemmas) {
         List<String> sentencesWithLemmas = findSentencesWithLemmas(sentences, queryLemmas);
 
         StringBuilder snippet = new StringBuilder();
@@ -64,7 +96,56 @@ public record Morphology(LuceneMorphology luceneMorphology) {
         return snippet.toString();
     }
 
-    private List<String> splitIntoSentences(String text) {
+    /**
+     * Метод вырезает сниппет из текста страницы по сохранённым смещениям совпавших словоформ.
+     * Окно сниппета выбирается так, чтобы в него попало больше всего совпадений; текст заново
+     * не разбирается.
+     *
+     * @param text          текст страницы из колонки text
+     * @param matchOffsets  смещения первых символов совпавших словоформ по возрастанию
+     * @return сниппет с выделенными совпадениями
+     */
+    public String createSnippet(String text, int[] matchOffsets) {
+        int best = 0;
+        int bestCount = 0;
+        for (int first = 0, last = 0; first < matchOffsets.length; first++) {
+            while (last < matchOffsets.length
+                && matchOffsets[last] - matchOffsets[first] < SNIPPET_SIZE) {
+                last++;
+            }
+            if (last - first > bestCount) {
+                best = first;
+                bestCount = last - first;
+            }
+        }
+        int start = Math.max(0, matchOffsets[best] - SNIPPET_CONTEXT);
+        while (start > 0 && start < matchOffsets[best]
+            && !Character.isWhitespace(text.charAt(start - 1))) {
+            start++;
+        }
+        int end = Math.min(text.length(), start + SNIPPET_SIZE);
+        StringBuilder snippet = new StringBuilder(end - start + 32);
+        int position = start;
+        for (int offset : matchOffsets) {
+            if (offset < start || offset >= end || offset < position) {
+                continue;
+            }
+            int wordEnd = offset;
+            while (wordEnd < text.length() && Character.isLetter(text.charAt(wordEnd))) {
+                wordEnd++;
+            }
+            snippet.append(text, position, offset).append("<b>")
+                .append(text, offset, wordEnd).append("</b>");
+            position = wordEnd;
+        }
+        if (position < end) {
+            snippet.append(text, position, end);
+        }
+        String result = snippet.toString().replace('\n', ' ');
+        return end < text.length() ? result + "..." : result;
+    }
+
+    public List<String> splitIntoSentences(String text) {
         List<String> sentencesList = new ArrayList<>();
         List<String> minSentencesList = new ArrayList<>();
         String[] sentences = text
@@ -102,13 +183,12 @@ public record Morphology(LuceneMorphology luceneMorphology) {
                 if (checkWord.isEmpty()) {
                     continue;
                 }
-                List<String> wordBaseForms = luceneMorphology.getNormalForms(
-                    checkWord.toLowerCase());
-                if (wordBaseForms.isEmpty()) {
+                String wordLemma = wordFormCache.lookup(checkWord.toLowerCase()).lemma();
+                if (wordLemma == null) {
                     continue;
                 }
                 for (String lemma : queryLemmas) {
-                    if (wordBaseForms.getFirst().equals(lemma)) {
+                    if (wordLemma.equals(lemma)) {
                         word = word.replaceAll(checkWord, "<b>" + checkWord + "</b>");
                         hasLemmas = true;
                     }
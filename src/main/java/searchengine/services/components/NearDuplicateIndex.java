@@ -0,0 +1,220 @@
+package searchengine.services.components;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import searchengine.config.CrawlerConfiguration;
+
+/**
+ * Отпечатки SimHash проиндексированных страниц каждого сайта. У почти одинаковых текстов
+ * отпечатки различаются в немногих битах, поэтому копию страницы — вариант пагинации, версию для
+ * печати, путь с другим регистром — можно найти до лемматизации и сохранить как ссылку на
+ * оригинал, не индексируя её повторно.
+ *
+ * <p>Отпечаток делится на {@code max-distance + 1} полос. Отпечатки, различающиеся не более чем
+ * в {@code max-distance} битах, совпадают хотя бы в одной полосе, поэтому сравниваются только
+ * отпечатки страниц с общей полосой.
+ */
+@Component
+@RequiredArgsConstructor
+public class NearDuplicateIndex {
+
+    private static final int SHINGLE_SIZE = 3;
+
+    private final CrawlerConfiguration crawlerConfiguration;
+    private final Map<Long, SiteFingerprints> sites = new ConcurrentHashMap<>();
+
+    public boolean isEnabled() {
+        return crawlerConfiguration.getNearDuplicate().isEnabled();
+    }
+
+    /**
+     * Метод ищет проиндексированную страницу сайта с почти таким же текстом.
+     *
+     * @param fingerprint   отпечаток {@link #simHash(String)} текста страницы
+     * @param excludePageId идентификатор самой страницы при повторном обходе или {@code null}
+     * @return идентификатор ближайшей страницы или {@code null}
+     */
+    public Long findOriginal(long siteId, long fingerprint, Long excludePageId) {
+        SiteFingerprints site = sites.get(siteId);
+        return site == null || fingerprint == 0 ? null
+            : site.find(fingerprint, excludePageId);
+    }
+
+    /**
+     * Метод запоминает отпечаток проиндексированной страницы, заменяя её прежний отпечаток.
+     */
+    public void register(long siteId, long pageId, long fingerprint) {
+        if (fingerprint != 0) {
+            sites.computeIfAbsent(siteId, key -> new SiteFingerprints(getBandCount()))
+                .add(pageId, fingerprint);
+        }
+    }
+
+    /**
+     * Метод забывает отпечаток страницы, которая индексируется заново.
+     */
+    public void remove(long siteId, long pageId) {
+        SiteFingerprints site = sites.get(siteId);
+        if (site != null) {
+            site.remove(pageId);
+        }
+    }
+
+    public void evictSite(long siteId) {
+        sites.remove(siteId);
+    }
+
+    /**
+     * Отпечаток SimHash текста по шинглам из трёх соседних слов. Слова сравниваются без учёта
+     * регистра, знаки препинания и разметка в отпечаток не входят.
+     *
+     * @return отпечаток или 0, если в тексте нет слов
+     */
+    public static long simHash(String text) {
+        int[] weights = new int[Long.SIZE];
+        long previous = 0;
+        long beforePrevious = 0;
+        int words = 0;
+        int i = 0;
+        while (i < text.length()) {
+            while (i < text.length() && !Character.isLetterOrDigit(text.charAt(i))) {
+                i++;
+            }
+            if (i == text.length()) {
+                break;
+            }
+            long word = 0xcbf29ce484222325L;
+            while (i < text.length() && Character.isLetterOrDigit(text.charAt(i))) {
+                word ^= Character.toLowerCase(text.charAt(i));
+                word *= 0x100000001b3L;
+                i++;
+            }
+            words++;
+            if (words >= SHINGLE_SIZE) {
+                addFeature(weights, shingle(word, previous, beforePrevious));
+            }
+            beforePrevious = previous;
+            previous = word;
+        }
+        if (words == 0) {
+            return 0;
+        }
+        if (words < SHINGLE_SIZE) {
+            addFeature(weights, shingle(previous, beforePrevious, 0));
+        }
+        long fingerprint = 0;
+        for (int bit = 0; bit < Long.SIZE; bit++) {
+            if (weights[bit] > 0) {
+                fingerprint |= 1L << bit;
+            }
+        }
+        return fingerprint;
+    }
+
+    private static long shingle(long word, long previous, long beforePrevious) {
+        return mix(word ^ Long.rotateLeft(previous, 21) ^ Long.rotateLeft(beforePrevious, 42));
+    }
+
+    private static void addFeature(int[] weights, long feature) {
+        for (int bit = 0; bit < Long.SIZE; bit++) {
+            weights[bit] += (feature >>> bit & 1) == 1 ? 1 : -1;
+        }
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private int getBandCount() {
+        int maxDistance = crawlerConfiguration.getNearDuplicate().getMaxDistance();
+        return Math.min(Long.SIZE, Math.max(0, maxDistance) + 1);
+    }
+
+    private int getMaxDistance() {
+        return Math.min(Long.SIZE - 1, Math.max(0,
+            crawlerConfiguration.getNearDuplicate().getMaxDistance()));
+    }
+
+    /**
+     * Отпечатки страниц одного сайта и их полосы.
+     */
+    private final class SiteFingerprints {
+
+        private final int bandCount;
+        private final Map<Long, Long> fingerprints = new HashMap<>();
+        private final List<Map<Long, List<Long>>> bands;
+
+        private SiteFingerprints(int bandCount) {
+            this.bandCount = bandCount;
+            this.bands = new ArrayList<>(bandCount);
+            for (int band = 0; band < bandCount; band++) {
+                bands.add(new HashMap<>());
+            }
+        }
+
+        private synchronized Long find(long fingerprint, Long excludePageId) {
+            int maxDistance = getMaxDistance();
+            Long original = null;
+            int bestDistance = Integer.MAX_VALUE;
+            for (int band = 0; band < bandCount; band++) {
+                List<Long> candidates = bands.get(band).get(bandValue(fingerprint, band));
+                if (candidates == null) {
+                    continue;
+                }
+                for (Long pageId : candidates) {
+                    int distance = Long.bitCount(fingerprints.get(pageId) ^ fingerprint);
+                    if (!pageId.equals(excludePageId) && distance <= maxDistance
+                        && distance < bestDistance) {
+                        original = pageId;
+                        bestDistance = distance;
+                    }
+                }
+            }
+            return original;
+        }
+
+        private synchronized void add(long pageId, long fingerprint) {
+            remove(pageId);
+            fingerprints.put(pageId, fingerprint);
+            for (int band = 0; band < bandCount; band++) {
+                bands.get(band).computeIfAbsent(bandValue(fingerprint, band),
+                    key -> new ArrayList<>(1)).add(pageId);
+            }
+        }
+
+        private synchronized void remove(long pageId) {
+            Long fingerprint = fingerprints.remove(pageId);
+            if (fingerprint == null) {
+                return;
+            }
+            for (int band = 0; band < bandCount; band++) {
+                Long value = bandValue(fingerprint, band);
+                List<Long> pageIds = bands.get(band).get(value);
+                pageIds.remove(Long.valueOf(pageId));
+                if (pageIds.isEmpty()) {
+                    bands.get(band).remove(value);
+                }
+            }
+        }
+
+        /**
+         * @return биты отпечатка, попадающие в полосу
+         */
+        private long bandValue(long fingerprint, int band) {
+            int from = band * Long.SIZE / bandCount;
+            int to = (band + 1) * Long.SIZE / bandCount;
+            int width = to - from;
+            return width == Long.SIZE ? fingerprint : fingerprint >>> from & ((1L << width) - 1);
+        }
+    }
+}
@@ -0,0 +1,484 @@
+package searchengine.services.components;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Сжатое множество идентификаторов страниц в духе Roaring bitmap. Значение делится на старшие и
+ * младшие 16 бит: старшие выбирают контейнер, младшие хранятся в нём либо отсортированным
+ * массивом (до 4096 значений), либо битовой картой на 65536 бит.
+ *
+ * <p>Экземпляры неизменяемы для читателей. Метод {@link #with(int)} при добавлении значения
+ * больше максимального дописывает его в общие с предыдущей версией массивы: каждая версия
+ * контейнера помнит свою мощность и максимум и не видит более поздних значений. Поэтому
+ * {@code with} допустимо вызывать только у последней версии множества.
+ */
+public final class PageIdBitmap {
+
+    public static final PageIdBitmap EMPTY = new PageIdBitmap(new char[0], new Container[0],
+        new int[0], 0);
+
+    private static final int ARRAY_CONTAINER_MAX = 4096;
+    private static final int BITMAP_WORDS = 1024;
+
+    private final char[] keys;
+    private final Container[] containers;
+    private final int[] offsets;
+    private final int cardinality;
+
+    private PageIdBitmap(char[] keys, Container[] containers, int[] offsets, int cardinality) {
+        this.keys = keys;
+        this.containers = containers;
+        this.offsets = offsets;
+        this.cardinality = cardinality;
+    }
+
+    /**
+     * Метод строит множество из возрастающей последовательности значений.
+     *
+     * @param values отсортированные по возрастанию значения без повторов
+     * @param length число используемых элементов массива
+     * @return множество значений
+     */
+    public static PageIdBitmap fromSorted(int[] values, int length) {
+        int containerCount = 0;
+        for (int i = 0; i < length; i++) {
+            if (i == 0 || (values[i] >>> 16) != (values[i - 1] >>> 16)) {
+                containerCount++;
+            }
+        }
+        char[] keys = new char[containerCount];
+        Container[] containers = new Container[containerCount];
+        int[] offsets = new int[containerCount];
+        int container = 0;
+        for (int from = 0; from < length; ) {
+            int high = values[from] >>> 16;
+            int to = from;
+            while (to < length && (values[to] >>> 16) == high) {
+                to++;
+            }
+            keys[container] = (char) high;
+            containers[container] = Container.fromSorted(values, from, to);
+            offsets[container] = from;
+            container++;
+            from = to;
+        }
+        return new PageIdBitmap(keys, containers, offsets, length);
+    }
+
+    public int cardinality() {
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return cardinality == 0;
+    }
+
+    public boolean contains(int value) {
+        int index = Arrays.binarySearch(keys, (char) (value >>> 16));
+        return index >= 0 && containers[index].contains((char) value);
+    }
+
+    /**
+     * @return наибольшее значение множества; для пустого множества {@code -1}
+     */
+    public int last() {
+        if (keys.length == 0) {
+            return -1;
+        }
+        int index = keys.length - 1;
+        return (keys[index] << 16) | containers[index].last();
+    }
+
+    /**
+     * Метод возвращает число значений множества, меньших заданного. Для значения из множества
+     * это его порядковый номер, по которому читается параллельный массив рангов.
+     */
+    public int rank(int value) {
+        int index = Arrays.binarySearch(keys, (char) (value >>> 16));
+        if (index >= 0) {
+            return offsets[index] + containers[index].rankBelow((char) value);
+        }
+        int insertion = -index - 1;
+        return insertion < keys.length ? offsets[insertion] : cardinality;
+    }
+
+    /**
+     * Метод возвращает множество с добавленным значением. Вызывать только у последней версии.
+     */
+    public PageIdBitmap with(int value) {
+        char high = (char) (value >>> 16);
+        char low = (char) value;
+        int index = Arrays.binarySearch(keys, high);
+        if (index >= 0) {
+            Container container = containers[index];
+            if (container.contains(low)) {
+                return this;
+            }
+            Container[] newContainers = containers.clone();
+            newContainers[index] = container.with(low);
+            int[] newOffsets = offsets;
+            if (index < keys.length - 1) {
+                newOffsets = offsets.clone();
+                for (int i = index + 1; i < newOffsets.length; i++) {
+                    newOffsets[i]++;
+                }
+            }
+            return new PageIdBitmap(keys, newContainers, newOffsets, cardinality + 1);
+        }
+        int insertion = -index - 1;
+        char[] newKeys = new char[keys.length + 1];
+        Container[] newContainers = new Container[keys.length + 1];
+        int[] newOffsets = new int[keys.length + 1];
+        System.arraycopy(keys, 0, newKeys, 0, insertion);
+        System.arraycopy(containers, 0, newContainers, 0, insertion);
+        System.arraycopy(offsets, 0, newOffsets, 0, insertion);
+        newKeys[insertion] = high;
+        newContainers[insertion] = ArrayContainer.of(low);
+        newOffsets[insertion] = insertion < keys.length ? offsets[insertion] : cardinality;
+        for (int i = insertion; i < keys.length; i++) {
+            newKeys[i + 1] = keys[i];
+            newContainers[i + 1] = containers[i];
+            newOffsets[i + 1] = offsets[i] + 1;
+        }
+        return new PageIdBitmap(newKeys, newContainers, newOffsets, cardinality + 1);
+    }
+
+    /**
+     * Метод пересекает множества. Контейнеры с разными старшими битами пропускаются целиком.
+     *
+     * @param other второе множество
+     * @return значения, присутствующие в обоих множествах
+     */
+    public PageIdBitmap and(PageIdBitmap other) {
+        int capacity = Math.min(keys.length, other.keys.length);
+        char[] newKeys = new char[capacity];
+        Container[] newContainers = new Container[capacity];
+        int[] newOffsets = new int[capacity];
+        int count = 0;
+        int total = 0;
+        for (int i = 0, j = 0; i < keys.length && j < other.keys.length; ) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                Container container = containers[i].and(other.containers[j]);
+                if (container.cardinality() > 0) {
+                    newKeys[count] = keys[i];
+                    newContainers[count] = container;
+                    newOffsets[count] = total;
+                    total += container.cardinality();
+                    count++;
+                }
+                i++;
+                j++;
+            }
+        }
+        if (count == 0) {
+            return EMPTY;
+        }
+        return new PageIdBitmap(Arrays.copyOf(newKeys, count),
+            Arrays.copyOf(newContainers, count), Arrays.copyOf(newOffsets, count), total);
+    }
+
+    public void forEach(IntConsumer consumer) {
+        for (int i = 0; i < keys.length; i++) {
+            containers[i].forEach(keys[i] << 16, consumer);
+        }
+    }
+
+    public RankCursor rankCursor() {
+        return new RankCursor();
+    }
+
+    /**
+     * Курсор для вычисления порядковых номеров возрастающей последовательности значений множества.
+     * Внутри битовых контейнеров подсчёт бит продолжается с места предыдущего вызова.
+     */
+    public final class RankCursor {
+
+        private int containerIndex;
+        private int wordIndex;
+        private int wordRank;
+
+        /**
+         * @param value значение множества, не меньшее переданного в предыдущий вызов
+         * @return порядковый номер значения
+         */
+        public int rank(int value) {
+            char high = (char) (value >>> 16);
+            while (containerIndex < keys.length && keys[containerIndex] < high) {
+                containerIndex++;
+                wordIndex = 0;
+                wordRank = 0;
+            }
+            if (containerIndex == keys.length || keys[containerIndex] != high) {
+                return PageIdBitmap.this.rank(value);
+            }
+            char low = (char) value;
+            if (containers[containerIndex] instanceof BitmapContainer bitmap) {
+                int targetWord = low >>> 6;
+                while (wordIndex < targetWord) {
+                    wordRank += Long.bitCount(bitmap.word(wordIndex));
+                    wordIndex++;
+                }
+                return offsets[containerIndex] + wordRank
+                    + Long.bitCount(bitmap.word(targetWord) & ((1L << low) - 1));
+            }
+            return offsets[containerIndex] + containers[containerIndex].rankBelow(low);
+        }
+    }
+
+    private abstract static class Container {
+
+        abstract int cardinality();
+
+        abstract char last();
+
+        abstract boolean contains(char value);
+
+        abstract int rankBelow(char value);
+
+        abstract Container with(char value);
+
+        abstract Container and(Container other);
+
+        abstract void forEach(int high, IntConsumer consumer);
+
+        static Container fromSorted(int[] values, int from, int to) {
+            int length = to - from;
+            if (length <= ARRAY_CONTAINER_MAX) {
+                char[] lows = new char[length];
+                for (int i = 0; i < length; i++) {
+                    lows[i] = (char) values[from + i];
+                }
+                return new ArrayContainer(lows, length);
+            }
+            long[] words = new long[BITMAP_WORDS];
+            for (int i = from; i < to; i++) {
+                char low = (char) values[i];
+                words[low >>> 6] |= 1L << low;
+            }
+            return new BitmapContainer(words, length, (char) values[to - 1]);
+        }
+    }
+
+    private static final class ArrayContainer extends Container {
+
+        private final char[] values;
+        private final int cardinality;
+
+        private ArrayContainer(char[] values, int cardinality) {
+            this.values = values;
+            this.cardinality = cardinality;
+        }
+
+        static ArrayContainer of(char value) {
+            char[] values = new char[4];
+            values[0] = value;
+            return new ArrayContainer(values, 1);
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        char last() {
+            return values[cardinality - 1];
+        }
+
+        @Override
+        boolean contains(char value) {
+            return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+        }
+
+        @Override
+        int rankBelow(char value) {
+            int position = Arrays.binarySearch(values, 0, cardinality, value);
+            return position >= 0 ? position : -position - 1;
+        }
+
+        @Override
+        Container with(char value) {
+            if (cardinality == ARRAY_CONTAINER_MAX) {
+                return toBitmap().with(value);
+            }
+            if (value > last()) {
+                if (cardinality < values.length) {
+                    values[cardinality] = value;
+                    return new ArrayContainer(values, cardinality + 1);
+                }
+                char[] grown = Arrays.copyOf(values, grownCapacity());
+                grown[cardinality] = value;
+                return new ArrayContainer(grown, cardinality + 1);
+            }
+            int insertion = -Arrays.binarySearch(values, 0, cardinality, value) - 1;
+            char[] grown = new char[grownCapacity()];
+            System.arraycopy(values, 0, grown, 0, insertion);
+            grown[insertion] = value;
+            System.arraycopy(values, insertion, grown, insertion + 1, cardinality - insertion);
+            return new ArrayContainer(grown, cardinality + 1);
+        }
+
+        @Override
+        Container and(Container other) {
+            char[] result = new char[Math.min(cardinality, other.cardinality())];
+            int count = 0;
+            if (other instanceof ArrayContainer array) {
+                for (int i = 0, j = 0; i < cardinality && j < array.cardinality; ) {
+                    if (values[i] < array.values[j]) {
+                        i++;
+                    } else if (values[i] > array.values[j]) {
+                        j++;
+                    } else {
+                        result[count++] = values[i];
+                        i++;
+                        j++;
+                    }
+                }
+            } else {
+                for (int i = 0; i < cardinality; i++) {
+                    if (other.contains(values[i])) {
+                        result[count++] = values[i];
+                    }
+                }
+            }
+            return new ArrayContainer(result, count);
+        }
+
+        @Override
+        void forEach(int high, IntConsumer consumer) {
+            for (int i = 0; i < cardinality; i++) {
+                consumer.accept(high | values[i]);
+            }
+        }
+
+        private int grownCapacity() {
+            return Math.min(ARRAY_CONTAINER_MAX, Math.max(4, cardinality + (cardinality >> 1)));
+        }
+
+        private BitmapContainer toBitmap() {
+            long[] words = new long[BITMAP_WORDS];
+            for (int i = 0; i < cardinality; i++) {
+                words[values[i] >>> 6] |= 1L << values[i];
+            }
+            return new BitmapContainer(words, cardinality, last());
+        }
+    }
+
+    private static final class BitmapContainer extends Container {
+
+        private final long[] words;
+        private final int cardinality;
+        private final char last;
+
+        private BitmapContainer(long[] words, int cardinality, char last) {
+            this.words = words;
+            this.cardinality = cardinality;
+            this.last = last;
+        }
+
+        /**
+         * Слово битовой карты с отброшенными битами выше максимума этой версии контейнера.
+         */
+        long word(int index) {
+            int lastWord = last >>> 6;
+            if (index < lastWord) {
+                return words[index];
+            }
+            if (index > lastWord) {
+                return 0L;
+            }
+            int lastBit = last & 63;
+            return lastBit == 63 ? words[index] : words[index] & ((1L << (lastBit + 1)) - 1);
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        char last() {
+            return last;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return value <= last && (words[value >>> 6] & (1L << value)) != 0;
+        }
+
+        @Override
+        int rankBelow(char value) {
+            if (value > last) {
+                return cardinality;
+            }
+            int targetWord = value >>> 6;
+            int rank = 0;
+            for (int i = 0; i < targetWord; i++) {
+                rank += Long.bitCount(words[i]);
+            }
+            return rank + Long.bitCount(words[targetWord] & ((1L << value) - 1));
+        }
+
+        @Override
+        Container with(char value) {
+            if (value > last) {
+                words[value >>> 6] |= 1L << value;
+                return new BitmapContainer(words, cardinality + 1, value);
+            }
+            long[] copy = Arrays.copyOf(words, BITMAP_WORDS);
+            copy[value >>> 6] |= 1L << value;
+            return new BitmapContainer(copy, cardinality + 1, last);
+        }
+
+        @Override
+        Container and(Container other) {
+            if (other instanceof ArrayContainer) {
+                return other.and(this);
+            }
+            BitmapContainer bitmap = (BitmapContainer) other;
+            int lastWord = Math.min(last, bitmap.last) >>> 6;
+            long[] result = new long[BITMAP_WORDS];
+            int count = 0;
+            for (int i = 0; i <= lastWord; i++) {
+                result[i] = word(i) & bitmap.word(i);
+                count += Long.bitCount(result[i]);
+            }
+            if (count > ARRAY_CONTAINER_MAX) {
+                int lastIndex = lastWord;
+                while (result[lastIndex] == 0) {
+                    lastIndex--;
+                }
+                char resultLast = (char) ((lastIndex << 6) + 63
+                    - Long.numberOfLeadingZeros(result[lastIndex]));
+                return new BitmapContainer(result, count, resultLast);
+            }
+            char[] values = new char[count];
+            int position = 0;
+            for (int i = 0; i <= lastWord; i++) {
+                long word = result[i];
+                while (word != 0) {
+                    values[position++] = (char) ((i << 6) + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            return new ArrayContainer(values, count);
+        }
+
+        @Override
+        void forEach(int high, IntConsumer consumer) {
+            int lastWord = last >>> 6;
+            for (int i = 0; i <= lastWord; i++) {
+                long word = word(i);
+                while (word != 0) {
+                    consumer.accept(high | ((i << 6) + Long.numberOfTrailingZeros(word)));
+                    word &= word - 1;
+                }
+            }
+        }
+    }
+}
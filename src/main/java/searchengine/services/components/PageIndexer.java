@@ -1,111 +1,116 @@
 package searchengine.services.components;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import searchengine.exceptions.IndexingStopUserException;
-import searchengine.model.IndexEntity;
-import searchengine.model.LemmaEntity;
 import searchengine.model.PageEntity;
 import searchengine.model.SiteEntity;
-import searchengine.repositories.IndexRepository;
-import searchengine.repositories.LemmaRepository;
+import searchengine.repositories.projections.LemmaProjection;
 
 public class PageIndexer {
 
     private final SiteEntity siteEntity;
     private final SiteParser siteParser;
-    private final LemmaRepository lemmaRepository;
-    private final IndexRepository indexRepository;
-    private final List<IndexEntity> newIndexEntitySavePack = new ArrayList<>();
-    private final List<LemmaEntity> newLemmaEntitySavePack = new ArrayList<>();
-    private final List<Long> updateLemmaEntityPack = new ArrayList<>();
-    private static final int BATCH_SIZE = 500;
 
-    public PageIndexer(SiteEntity siteEntity, SiteParser siteParser,
-        LemmaRepository lemmaRepository, IndexRepository indexRepository) {
+    public PageIndexer(SiteEntity siteEntity, SiteParser siteParser) {
         this.siteEntity = siteEntity;
         this.siteParser = siteParser;
-        this.lemmaRepository = lemmaRepository;
-        this.indexRepository = indexRepository;
     }
 
     /**
      * Метод извлекает из текстов страниц слова, преобразовывать их в леммы, считает количество
-     * вхождений каждой леммы в текст и сохранять эту информацию в базу данных.
+     * вхождений каждой леммы в текст и сохранять эту информацию в базу данных. Страницы одного
+     * сайта индексируются параллельно: частоты лемм увеличиваются запросом
+     * {@code INSERT ... ON DUPLICATE KEY UPDATE} при пакетной записи, поэтому блокировка сайта
+     * не нужна.
      *
      * @param pageModel страничка сайта которая будет обрабатываться
      * @throws IndexingStopUserException если прервано пользователем
      */
     public void indexPage(PageEntity pageModel) {
-        Morphology morphology = new Morphology(siteParser.getLuceneMorphology());
-        HashMap<String, Integer> lemmasCount = morphology.collectLemmas(pageModel.getContent());
-        synchronized (siteEntity) {
-            if (!siteParser.isIndexing()) {
-                throw new IndexingStopUserException();
-            }
-            createLemmaAndIndexModels(lemmasCount, pageModel);
-            saveLemmaPack();
-            saveIndexPack();
-        }
-    }
-
-    private void createLemmaAndIndexModels(HashMap<String, Integer> lemmasCount,
-        PageEntity pageEntity) {
-        for (String lemma : lemmasCount.keySet()) {
-            Long lemmaId = lemmaRepository.findIdLemmaByNameAndSiteId(lemma, siteEntity.getId());
-            LemmaEntity lemmaEntity;
-            if (lemmaId == null) {
-                lemmaEntity = new LemmaEntity();
-                lemmaEntity.setSiteId(siteEntity);
-                lemmaEntity.setLemma(lemma);
-                lemmaEntity.setFrequency(1);
-                newLemmaEntitySavePack.add(lemmaEntity);
-            } else {
-                lemmaEntity = lemmaRepository.findById(lemmaId)
-                    .orElseThrow(NullPointerException::new);
-                updateLemmaEntityPack.add(lemmaId);
-            }
-            IndexEntity indexEntity = new IndexEntity();
-            indexEntity.setPageId(pageEntity);
-            indexEntity.setLemmaId(lemmaEntity);
-            indexEntity.setRating(Float.valueOf(lemmasCount.get(lemma).toString()));
-            newIndexEntitySavePack.add(indexEntity);
-        }
+        Morphology morphology = new Morphology(siteParser.getWordFormCache());
+        boolean positional = siteParser.getCrawlerConfiguration().isPositionalIndex();
+        indexPage(pageModel, morphology.collectLemmas(pageModel.getContent(),
+            positional ? pageModel.getText() : null));
     }
 
-    private void saveLemmaPack() {
+    /**
+     * Метод сохраняет леммы страницы, подсчитанные заранее, например отдельной стадией
+     * конвейера обхода. Строки таблицы indexing и приращения частот лемм передаются
+     * {@link IndexBulkWriter} и записываются вместе со строками других страниц.
+     *
+     * @param pageModel   сохранённая страница
+     * @param lemmasCount число вхождений каждой леммы в текст страницы
+     */
+    public void indexPage(PageEntity pageModel, LemmaCounter lemmasCount) {
         if (!siteParser.isIndexing()) {
             throw new IndexingStopUserException();
         }
-        if (!newLemmaEntitySavePack.isEmpty()) {
-            if (newLemmaEntitySavePack.size() >= BATCH_SIZE) {
-                for (int i = 0; i < newLemmaEntitySavePack.size(); i += BATCH_SIZE) {
-                    List<LemmaEntity> batchLemmaModels = newLemmaEntitySavePack.subList(i,
-                        Math.min(i + BATCH_SIZE, newLemmaEntitySavePack.size()));
-                    lemmaRepository.saveAllAndFlush(batchLemmaModels);
+        List<LemmaInfo> lemmaInfos = new ArrayList<>(lemmasCount.size());
+        long[] lemmaIds = new long[lemmasCount.size()];
+        float[] ratings = new float[lemmasCount.size()];
+        LemmaPositions positions = lemmasCount.getPositions();
+        byte[][] encodedPositions = positions == null ? null : new byte[lemmasCount.size()][];
+        siteParser.getDatabaseAccessLimiter().run(() -> {
+            lemmasCount.forEach((lemma, count) -> {
+                LemmaInfo lemmaInfo = siteParser.getLemmaDictionary().getOrCreate(
+                    siteEntity.getId(), lemma,
+                    () -> siteParser.getIdRangeAllocator().next(IdRangeAllocator.LEMMA_SEQUENCE));
+                lemmaIds[lemmaInfos.size()] = lemmaInfo.getId();
+                ratings[lemmaInfos.size()] = count;
+                if (encodedPositions != null) {
+                    encodedPositions[lemmaInfos.size()] = positions.encode(lemma);
                 }
-            } else {
-                lemmaRepository.saveAllAndFlush(newLemmaEntitySavePack);
-            }
-        }
-        if (!updateLemmaEntityPack.isEmpty()) {
-            lemmaRepository.incrementFrequency(updateLemmaEntityPack);
-        }
+                lemmaInfos.add(lemmaInfo);
+            });
+            siteParser.getIndexBulkWriter().add(siteEntity.getId(), pageModel.getId(),
+                lemmaInfos, ratings, encodedPositions);
+        });
+        lemmaInfos.forEach(LemmaInfo::incrementFrequency);
+        siteParser.getStopLemmaTracker().increment(siteEntity.getId(), lemmasCount.lemmas());
+        addToInvertedIndex(pageModel, lemmaIds, ratings);
+        siteParser.getIndexGeneration().bump();
     }
 
-    private void saveIndexPack() {
-        if (!siteParser.isIndexing()) {
-            throw new IndexingStopUserException();
-        }
-        if (newIndexEntitySavePack.size() >= BATCH_SIZE) {
-            for (int i = 0; i < newIndexEntitySavePack.size(); i += BATCH_SIZE) {
-                List<IndexEntity> batchLemmaModels = newIndexEntitySavePack.subList(i,
-                    Math.min(i + BATCH_SIZE, newIndexEntitySavePack.size()));
-                indexRepository.saveAll(batchLemmaModels);
-            }
-        } else {
-            indexRepository.saveAll(newIndexEntitySavePack);
+    /**
+     * Метод удаляет из базы данных индекс ранее сохранённой страницы перед её повторной
+     * индексацией: строки таблицы indexing удаляются, а частоты лемм страницы уменьшаются на
+     * единицу. Вызывается в транзакции, записывающей новую версию страницы, чтобы при ошибке
+     * записи прежний индекс остался на месте.
+     *
+     * @param pageId идентификатор сохранённой страницы
+     * @return леммы удалённых строк для {@link #forgetPage}
+     */
+    public List<LemmaProjection> deletePageRows(Long pageId) {
+        List<LemmaProjection> rows = siteParser.getIndexRepository().findLemmasByPageId(pageId);
+        siteParser.getLemmaUpsertWriter().decrement(
+            rows.stream().map(LemmaProjection::getId).toList());
+        siteParser.getIndexRepository().deleteByPageId(pageId);
+        return rows;
+    }
+
+    /**
+     * Метод удаляет страницу из словаря, частых лемм и индекса в памяти после того, как её
+     * строки удалены {@link #deletePageRows} и транзакция зафиксирована.
+     *
+     * @param pageId идентификатор сохранённой страницы
+     * @param lemmas леммы удалённых строк
+     */
+    public void forgetPage(Long pageId, List<LemmaProjection> lemmas) {
+        List<String> lemmaNames = lemmas.stream().map(LemmaProjection::getLemma).toList();
+        siteParser.getLemmaDictionary().resolve(siteEntity.getId(), lemmaNames).values()
+            .forEach(LemmaInfo::decrementFrequency);
+        siteParser.getStopLemmaTracker().decrement(siteEntity.getId(), lemmaNames);
+        siteParser.getInvertedIndex().removePage(siteEntity.getId(), pageId,
+            lemmas.stream().map(LemmaProjection::getId).toList());
+        siteParser.getIndexGeneration().bump();
+    }
+
+    private void addToInvertedIndex(PageEntity pageModel, long[] lemmaIds, float[] ratings) {
+        InvertedIndex invertedIndex = siteParser.getInvertedIndex();
+        for (int i = 0; i < lemmaIds.length; i++) {
+            invertedIndex.addPosting(siteEntity.getId(), lemmaIds[i], pageModel.getId(),
+                ratings[i]);
         }
     }
 }
@@ -1,33 +1,41 @@
 package searchengine.services.components;
 
 import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.TreeSet;
-import java.util.concurrent.ForkJoinTask;
-import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.jsoup.Connection;
 import org.jsoup.HttpStatusException;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
-import org.jsoup.select.Elements;
 import searchengine.exceptions.IndexingConnectionSiteException;
 import searchengine.exceptions.IndexingStopUserException;
 import searchengine.model.PageEntity;
 import searchengine.model.SiteEntity;
 import searchengine.model.Status;
-import searchengine.repositories.IndexRepository;
-import searchengine.repositories.LemmaRepository;
 import searchengine.repositories.PageRepository;
 import searchengine.repositories.SiteRepository;
+import searchengine.repositories.projections.LemmaProjection;
+import searchengine.repositories.projections.StoredPageProjection;
 
 @Slf4j
 @RequiredArgsConstructor
-public class PageParser extends RecursiveAction {
+public class PageParser {
 
     private final String path;
 
@@ -38,88 +46,455 @@ public class PageParser extends RecursiveAction {
     private final SiteRepository siteRepository;
 
     private final PageRepository pageRepository;
-
-    private final LemmaRepository lemmaRepository;
-
-    private final IndexRepository indexRepository;
     private boolean isSingle;
 
-    private final Set<String> checkUrls;
+    private final UrlFrontier frontier;
+
+    private final int depth;
+    private boolean isStored;
+    private StoredPageProjection storedPage;
+    private boolean conditional;
+    private List<PageParser> revisitTasks = List.of();
     private static final int MEDIUMTEXT_SIZE = 16_777_215;
+    private static final int HTTP_NOT_MODIFIED = 304;
+    private static final int REVISIT_DEPTH = 1;
     private static final String ROOT_ERROR_MESSAGE = "Ошибка индексации: главная страница сайта недоступна";
     private static final String GENERAL_ERROR_MESSAGE = "Ошибка индексации: ";
 
+    /**
+     * Задача одной страницы с собственным множеством адресов. Из сохранённых страниц сайта
+     * читается только эта: если она уже есть, её строка и индекс заменяются.
+     */
     public PageParser(String path, SiteEntity siteEntity, SiteParser siteParser,
-        SiteRepository siteRepository, PageRepository pageRepository,
-        LemmaRepository lemmaRepository, IndexRepository indexRepository) {
-        this.path = path;
-        this.siteEntity = siteEntity;
-        this.siteParser = siteParser;
-        this.siteRepository = siteRepository;
-        this.pageRepository = pageRepository;
-        this.lemmaRepository = lemmaRepository;
-        this.indexRepository = indexRepository;
-        this.checkUrls = new TreeSet<>();
+        SiteRepository siteRepository, PageRepository pageRepository) {
+        this(path, siteEntity, siteParser, siteRepository, pageRepository,
+            UrlFrontier.create(siteParser.getCrawlerConfiguration().getFrontier()), 0);
+        frontier.claim(path, 0);
+        this.storedPage = siteParser.getDatabaseAccessLimiter().call(
+            () -> pageRepository.findStoredPage(siteEntity.getId(), path));
+    }
+
+    /**
+     * Метод создаёт главную задачу обхода всего сайта. Сохранённые страницы сайта читаются
+     * один раз: при полном обходе они отмечаются посещёнными, а при инкрементальном выдаются
+     * как задачи повторной проверки.
+     */
+    public static PageParser crawl(SiteEntity siteEntity, SiteParser siteParser,
+        SiteRepository siteRepository, PageRepository pageRepository) {
+        PageParser root = new PageParser("/", siteEntity, siteParser, siteRepository,
+            pageRepository, UrlFrontier.create(siteParser.getCrawlerConfiguration().getFrontier()),
+            0);
+        boolean incremental = siteParser.getCrawlerConfiguration().isIncremental();
+        List<PageParser> storedPageTasks = new ArrayList<>();
+        for (StoredPageProjection page : root.loadStoredPages().values()) {
+            if (!incremental) {
+                root.frontier.markVisited(page.getPath());
+            } else if (page.getPath().equals(root.path)) {
+                root.frontier.claim(page.getPath(), 0);
+                root.storedPage = page;
+                root.conditional = isConditionalRevisit(page);
+            } else {
+                root.frontier.claim(page.getPath(), REVISIT_DEPTH);
+                storedPageTasks.add(root.revisit(page.getPath(), REVISIT_DEPTH, page,
+                    isConditionalRevisit(page)));
+            }
+        }
+        root.isStored = !root.frontier.claim(root.path, 0) && root.storedPage == null;
+        root.revisitTasks = storedPageTasks;
+        return root;
+    }
+
+    /**
+     * Метод создаёт главную задачу обхода, продолжающего прерванный обход по контрольной точке.
+     * Незавершённые страницы выдаются как задачи повторной проверки. Страницы, сохранённые
+     * после контрольной точки, индексируются заново без условных запросов: их индекс мог не
+     * дойти до базы данных.
+     *
+     * @param frontier множество адресов, восстановленное из контрольной точки
+     */
+    public static PageParser resume(SiteEntity siteEntity, SiteParser siteParser,
+        SiteRepository siteRepository, PageRepository pageRepository, UrlFrontier frontier) {
+        PageParser root = new PageParser("/", siteEntity, siteParser, siteRepository,
+            pageRepository, frontier, 0);
+        Map<String, StoredPageProjection> storedPages = root.loadStoredPages();
+        List<PageParser> tasks = new ArrayList<>();
+        root.isStored = true;
+        frontier.getPending().forEach((pendingPath, depth) -> {
+            StoredPageProjection storedPage = storedPages.get(pendingPath);
+            if (pendingPath.equals(root.path)) {
+                root.isStored = false;
+                root.storedPage = storedPage;
+            } else {
+                tasks.add(root.revisit(pendingPath, depth, storedPage, false));
+            }
+        });
+        root.revisitTasks = tasks;
+        return root;
+    }
+
+    /**
+     * Метод читает сохранённые страницы сайта и заново заполняет отпечатки
+     * {@link NearDuplicateIndex} проиндексированными страницами.
+     */
+    private Map<String, StoredPageProjection> loadStoredPages() {
+        Map<String, StoredPageProjection> storedPages = new HashMap<>();
+        NearDuplicateIndex nearDuplicateIndex = siteParser.getNearDuplicateIndex();
+        nearDuplicateIndex.evictSite(siteEntity.getId());
+        for (StoredPageProjection page : siteParser.getDatabaseAccessLimiter().call(
+            () -> pageRepository.findStoredPagesBySiteId(siteEntity.getId()))) {
+            storedPages.put(page.getPath(), page);
+            if (page.getSimhash() != null && page.getDuplicateOf() == null) {
+                nearDuplicateIndex.register(siteEntity.getId(), page.getId(), page.getSimhash());
+            }
+        }
+        return storedPages;
+    }
+
+    /**
+     * Неизменившуюся страницу можно пропустить, только если она проиндексирована сама. Копия
+     * другой страницы загружается и сравнивается заново: оригинал мог измениться, и тогда
+     * копия должна стать самостоятельной страницей со своим индексом.
+     */
+    private static boolean isConditionalRevisit(StoredPageProjection page) {
+        return page.getDuplicateOf() == null;
+    }
+
+    /**
+     * Метод создаёт задачу повторной обработки сохранённой или незавершённой страницы.
+     *
+     * @param conditional проверять ли изменение страницы условным запросом и отпечатком текста
+     */
+    private PageParser revisit(String pagePath, int pageDepth, StoredPageProjection page,
+        boolean conditional) {
+        PageParser parser = new PageParser(pagePath, siteEntity, siteParser, siteRepository,
+            pageRepository, frontier, pageDepth);
+        parser.storedPage = page;
+        parser.conditional = conditional;
+        return parser;
     }
 
     public void setSingleParsing() {
         isSingle = true;
     }
 
-    @Override
-    protected void compute() {
-        log.info("Start {} " + " {}", siteEntity.getUrl(), LocalDateTime.now());
-        PageEntity pageEntity;
-        synchronized (siteEntity) {
-            if (!siteParser.isIndexing()) {
-                throw new IndexingStopUserException();
-            }
-            pageEntity = parsePage();
+    /**
+     * Метод загружает и индексирует страницу, не запуская обход найденных на ней ссылок.
+     * {@link VirtualThreadCrawler} запускает каждую страницу в своём виртуальном потоке, который
+     * ждёт разрешения {@link CrawlScheduler}.
+     *
+     * @return задачи для ещё не посещённых ссылок страницы
+     */
+    public List<PageParser> crawlPage() {
+        if (!siteParser.isIndexing()) {
+            throw new IndexingStopUserException();
         }
-        if (pageEntity == null) {
-            return;
+        List<PageParser> tasks = new ArrayList<>(takeRevisitTasks());
+        CrawlScheduler.Permit permit;
+        try {
+            permit = siteParser.getCrawlScheduler().await(siteEntity.getId());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IndexingStopUserException();
+        } catch (CancellationException ex) {
+            throw new IndexingStopUserException();
         }
-        PageIndexer pageIndexer = new PageIndexer(siteEntity, siteParser, lemmaRepository,
-            indexRepository);
-        pageIndexer.indexPage(pageEntity);
-        if (isSingle) {
-            return;
+        try {
+            tasks.addAll(processPage());
+        } finally {
+            permit.close();
         }
-        Set<String> childUrls = findChildUrls(pageEntity);
-        ForkJoinTask.invokeAll(createSubtasks(childUrls));
-        log.info("Stop {}" + " {} ", siteEntity.getUrl(), LocalDateTime.now());
+        return tasks;
     }
 
-    private PageEntity parsePage() {
-        if (pageRepository.findPageIdByUrlSiteId(path, siteEntity.getId()) != null) {
+    /**
+     * Метод обрабатывает страницу в пуле обхода сайта, когда {@link CrawlScheduler} выдаст на
+     * неё разрешение, а новую страницу — ещё и {@link PolitenessScheduler}. Разрешения ожидаются
+     * без блокировки: пока их нет, страница не занимает поток пула.
+     *
+     * @param executor пул обхода сайта
+     * @return задачи для ещё не посещённых ссылок страницы; при остановке обхода завершается
+     * {@link IndexingStopUserException}
+     */
+    CompletableFuture<List<PageParser>> crawlPageAsync(Executor executor) {
+        if (!siteParser.isIndexing()) {
+            return CompletableFuture.failedFuture(new IndexingStopUserException());
+        }
+        List<PageParser> revisits = takeRevisitTasks();
+        return siteParser.getCrawlScheduler().acquire(siteEntity.getId())
+            .thenCompose(permit -> {
+                CompletableFuture<PolitenessScheduler.Permit> hostPermit = acquireHostPermit();
+                return hostPermit
+                    .thenApplyAsync(this::processPage, executor)
+                    .whenComplete((pageTasks, ex) -> {
+                        hostPermit.thenAccept(PageParser::closeHostPermit);
+                        permit.close();
+                    });
+            })
+            .handle((pageTasks, ex) -> {
+                if (ex != null) {
+                    throw asCrawlException(ex);
+                }
+                List<PageParser> tasks = new ArrayList<>(revisits);
+                tasks.addAll(pageTasks);
+                return tasks;
+            });
+    }
+
+    /**
+     * @return разрешение на загрузку с хоста или {@code null}, если страница не загружается
+     */
+    private CompletableFuture<PolitenessScheduler.Permit> acquireHostPermit() {
+        if (isSingle || !isNewPage()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return siteParser.getPolitenessScheduler()
+            .acquire(URI.create(siteEntity.getUrl()).getHost());
+    }
+
+    private static void closeHostPermit(PolitenessScheduler.Permit hostPermit) {
+        if (hostPermit != null) {
+            hostPermit.close();
+        }
+    }
+
+    /**
+     * Метод приводит ошибку асинхронной обработки к исключению обхода: отмена разрешения и
+     * отказ остановленного пула означают остановку индексации.
+     */
+    private static RuntimeException asCrawlException(Throwable ex) {
+        Throwable cause = ex instanceof CompletionException && ex.getCause() != null
+            ? ex.getCause() : ex;
+        if (cause instanceof CancellationException
+            || cause instanceof RejectedExecutionException) {
+            return new IndexingStopUserException();
+        }
+        return cause instanceof RuntimeException runtimeException ? runtimeException
+            : new CompletionException(cause);
+    }
+
+    private List<PageParser> processPage() {
+        return processPage(null);
+    }
+
+    /**
+     * @param hostPermit полученное заранее разрешение на загрузку с хоста или {@code null},
+     *                   если его нужно дождаться
+     */
+    private List<PageParser> processPage(PolitenessScheduler.Permit hostPermit) {
+        List<PageParser> tasks = new ArrayList<>();
+        ExtractedPage extractedPage = fetchAndExtract(hostPermit);
+        PageEntity pageEntity = extractedPage == null ? null : parsePage(extractedPage);
+        if (pageEntity != null) {
+            if (pageEntity.getDuplicateOf() == null) {
+                PageIndexer pageIndexer = new PageIndexer(siteEntity, siteParser);
+                pageIndexer.indexPage(pageEntity);
+                registerFingerprint(pageEntity);
+            }
+            if (!isSingle) {
+                tasks.addAll(createSubtasks(extractedPage.links()));
+            }
+        }
+        completePage();
+        return tasks;
+    }
+
+    /**
+     * Метод отдаёт задачи повторной проверки сохранённых страниц сайта. Они есть только у
+     * главной страницы инкрементального обхода и выдаются один раз: ссылки неизменившейся
+     * страницы ведут на уже сохранённые страницы, поэтому обходить их не нужно.
+     */
+    List<PageParser> takeRevisitTasks() {
+        List<PageParser> tasks = revisitTasks;
+        revisitTasks = List.of();
+        return tasks;
+    }
+
+    private ExtractedPage fetchAndExtract(PolitenessScheduler.Permit hostPermit) {
+        if (!isNewPage()) {
             return null;
         }
-        Document doc = connectPage();
-        if (doc == null || doc.outerHtml().length() >= MEDIUMTEXT_SIZE) {
+        Document doc = hostPermit == null ? fetchPage() : fetchPage(hostPermit);
+        return doc == null ? null : extract(doc);
+    }
+
+    private PageEntity parsePage(ExtractedPage extractedPage) {
+        PageEntity pageEntity = buildPage(extractedPage);
+        if (pageEntity == null) {
             return null;
         }
-        PageEntity pageEntity = createPageEntity(path, siteEntity,
-            doc.connection().response().statusCode(), doc.outerHtml());
+        savePage(pageEntity);
+        siteParser.getDatabaseAccessLimiter().run(() -> siteRepository.updateStatusTime(
+            siteEntity.getId(), LocalDateTime.now()));
+        return pageEntity;
+    }
 
-        siteEntity.setStatusTime(LocalDateTime.now());
-        siteRepository.saveAndFlush(siteEntity);
+    SiteEntity getSiteEntity() {
+        return siteEntity;
+    }
 
-        if (!isSingle) {
-            try {
-                Thread.sleep(siteParser.getConfig().getTimeout());
-            } catch (InterruptedException ex) {
-                throw new IndexingStopUserException();
+    UrlFrontier getFrontier() {
+        return frontier;
+    }
+
+    /**
+     * Метод отмечает страницу обработанной: её ссылки уже выданы задачами, а индекс передан на
+     * запись, поэтому продолжение обхода по контрольной точке её не повторит.
+     */
+    void completePage() {
+        frontier.complete(path);
+    }
+
+    /**
+     * Проверяет, что страница ещё не сохранена в таблицу page. Пути сохранённых страниц
+     * заносятся в {@link UrlFrontier} до начала обхода, а каждый новый путь выдаётся им один раз,
+     * поэтому запрос к базе данных не нужен.
+     */
+    boolean isNewPage() {
+        return !isStored;
+    }
+
+    /**
+     * Метод разбирает загруженный документ один раз: дальше страница обрабатывается по
+     * {@link ExtractedPage}, а дерево документа освобождается.
+     */
+    ExtractedPage extract(Document doc) {
+        return ExtractedPage.extract(doc);
+    }
+
+    /**
+     * Метод строит несохранённую страницу с заголовком и предложениями текста, заголовками
+     * ответа для условных запросов и отпечатками текста. Если на сайте уже проиндексирована
+     * страница с почти таким же текстом, новая страница отмечается её копией.
+     *
+     * @return страница или {@code null}, если она не помещается в колонку content или при
+     * повторном обходе её текст не изменился
+     */
+    PageEntity buildPage(ExtractedPage extractedPage) {
+        if (extractedPage.content().length() >= MEDIUMTEXT_SIZE) {
+            return null;
+        }
+        String text = extractedPage.text();
+        long contentHash = contentHash(extractedPage.title(), text);
+        if (conditional && Long.valueOf(contentHash).equals(storedPage.getContentHash())) {
+            log.debug("{}{} не изменилась", siteEntity.getUrl(), path);
+            return null;
+        }
+        PageEntity pageEntity = buildPageEntity(path, siteEntity, extractedPage.statusCode(),
+            extractedPage.content(), extractedPage.title(), text);
+        pageEntity.setEtag(extractedPage.etag());
+        pageEntity.setLastModified(extractedPage.lastModified());
+        pageEntity.setContentHash(contentHash);
+        pageEntity.setSimhash(NearDuplicateIndex.simHash(text));
+        NearDuplicateIndex nearDuplicateIndex = siteParser.getNearDuplicateIndex();
+        if (!isSingle && nearDuplicateIndex.isEnabled()) {
+            pageEntity.setDuplicateOf(nearDuplicateIndex.findOriginal(siteEntity.getId(),
+                pageEntity.getSimhash(), storedPage == null ? null : storedPage.getId()));
+            if (pageEntity.getDuplicateOf() != null) {
+                log.debug("{}{} — копия страницы {}", siteEntity.getUrl(), path,
+                    pageEntity.getDuplicateOf());
             }
         }
         return pageEntity;
     }
 
+    /**
+     * Метод удаляет из базы данных индекс прежней версии сохранённой страницы. Вызывается в
+     * транзакции записи новой версии.
+     *
+     * @return леммы удалённых строк для {@link #forgetStoredIndex}
+     */
+    List<LemmaProjection> deleteStoredIndex() {
+        if (storedPage == null) {
+            return List.of();
+        }
+        return new PageIndexer(siteEntity, siteParser).deletePageRows(storedPage.getId());
+    }
+
+    /**
+     * Метод удаляет прежнюю версию страницы из индексов в памяти после фиксации транзакции.
+     *
+     * @param lemmas результат {@link #deleteStoredIndex()}
+     */
+    void forgetStoredIndex(List<LemmaProjection> lemmas) {
+        if (storedPage != null) {
+            siteParser.getNearDuplicateIndex().remove(siteEntity.getId(), storedPage.getId());
+            new PageIndexer(siteEntity, siteParser).forgetPage(storedPage.getId(), lemmas);
+        }
+    }
+
+    /**
+     * Метод индексирует сохранённую страницу по заранее подсчитанным леммам. Копии других
+     * страниц не индексируются.
+     */
+    void indexPage(PageEntity pageEntity, LemmaCounter lemmasCount) {
+        if (pageEntity.getDuplicateOf() == null) {
+            new PageIndexer(siteEntity, siteParser).indexPage(pageEntity, lemmasCount);
+            registerFingerprint(pageEntity);
+        }
+    }
+
+    /**
+     * Метод запоминает отпечаток проиндексированной страницы: страницы, обработанные после
+     * этого, могут быть отмечены её копиями.
+     */
+    private void registerFingerprint(PageEntity pageEntity) {
+        if (pageEntity.getSimhash() != null) {
+            siteParser.getNearDuplicateIndex().register(siteEntity.getId(), pageEntity.getId(),
+                pageEntity.getSimhash());
+        }
+    }
+
+    /**
+     * Метод загружает страницу, дождавшись разрешения планировщика вежливого обхода хоста.
+     * Одиночная индексация страницы выполняется без ожидания.
+     */
+    Document fetchPage() {
+        if (isSingle) {
+            return connectPage();
+        }
+        String host = URI.create(siteEntity.getUrl()).getHost();
+        PolitenessScheduler.Permit permit;
+        try {
+            permit = siteParser.getPolitenessScheduler().await(host);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IndexingStopUserException();
+        }
+        return fetchPage(permit);
+    }
+
+    /**
+     * Метод загружает страницу по полученному разрешению и сразу освобождает его.
+     */
+    private Document fetchPage(PolitenessScheduler.Permit permit) {
+        try {
+            return connectPage();
+        } finally {
+            permit.close();
+        }
+    }
+
+    /**
+     * Метод загружает страницу. Сохранённая страница запрашивается условно, и ответ
+     * {@code 304 Not Modified} означает, что её не нужно обрабатывать.
+     */
     private Document connectPage() {
         try {
-            return Jsoup.connect(siteEntity.getUrl() + path)
+            Connection connection = Jsoup.connect(siteEntity.getUrl() + path)
                 .userAgent(siteParser.getConfig().getUserAgent())
-                .referrer(siteParser.getConfig().getReferrer())
-                .get();
+                .referrer(siteParser.getConfig().getReferrer());
+            if (conditional && storedPage.getEtag() != null) {
+                connection.header("If-None-Match", storedPage.getEtag());
+            }
+            if (conditional && storedPage.getLastModified() != null) {
+                connection.header("If-Modified-Since", storedPage.getLastModified());
+            }
+            Document doc = connection.get();
+            if (doc.connection().response().statusCode() == HTTP_NOT_MODIFIED) {
+                log.debug("{}{} не изменилась", siteEntity.getUrl(), path);
+                return null;
+            }
+            return doc;
         } catch (HttpStatusException ex) {
             if (isSingle) {
                 siteParser.stopPoolIndexing();
@@ -138,27 +513,49 @@ public class PageParser extends RecursiveAction {
 
     private PageEntity createPageEntity(String url, SiteEntity siteModel, int statusCode,
         String context) {
+        PageEntity pageEntity = buildPageEntity(url, siteModel, statusCode, context, null, null);
+        savePage(pageEntity);
+        return pageEntity;
+    }
+
+    private PageEntity buildPageEntity(String url, SiteEntity siteModel, int statusCode,
+        String context, String title, String text) {
         PageEntity pageEntity = new PageEntity();
+        if (storedPage != null) {
+            pageEntity.setId(storedPage.getId());
+        }
         pageEntity.setPath(url);
         pageEntity.setSiteId(siteModel);
         pageEntity.setCode(statusCode);
         pageEntity.setContent(context);
-        pageRepository.saveAndFlush(pageEntity);
-        if (!isSingle) {
-            log.info("{}{} добавлена", siteModel.getUrl(), path);
-        }
+        pageEntity.setTitle(title);
+        pageEntity.setText(text);
         return pageEntity;
     }
 
-    private Set<String> findChildUrls(PageEntity pageModel) {
-        Document doc = Jsoup.parse(pageModel.getContent());
-        Set<String> childUrls = new HashSet<>();
-        Elements elements = doc.select("a[href^=/]");
-        elements.forEach(element -> childUrls.add(element.attr("href")));
-        return childUrls;
+    /**
+     * Метод записывает страницу. Индекс прежней версии удаляется в той же транзакции: если
+     * запись не удалась, в базе данных остаются и прежняя страница, и её индекс.
+     */
+    private void savePage(PageEntity pageEntity) {
+        List<LemmaProjection> removedLemmas = siteParser.getDatabaseAccessLimiter().call(
+            () -> siteParser.getTransactionTemplate().execute(status -> {
+                List<LemmaProjection> lemmas = deleteStoredIndex();
+                pageRepository.saveAndFlush(pageEntity);
+                return lemmas;
+            }));
+        forgetStoredIndex(removedLemmas);
+        if (!isSingle) {
+            log.info("{}{} добавлена", siteEntity.getUrl(), path);
+        }
     }
 
-    private List<PageParser> createSubtasks(Set<String> childUrls) {
+    /**
+     * Метод создаёт задачи для ещё не посещённых ссылок загруженной страницы.
+     *
+     * @param childUrls ссылки из {@link ExtractedPage#links()}
+     */
+    List<PageParser> createSubtasks(Set<String> childUrls) {
         List<PageParser> subtasks = new ArrayList<>();
         String subRootPath = getSubRootSite(siteEntity.getUrl());
         for (String url : childUrls) {
@@ -171,22 +568,38 @@ public class PageParser extends RecursiveAction {
                 }
             }
             if (url.equals(path)
-                || checkUrls.contains(url)
                 || (url.contains("http") && !url.contains(siteEntity.getUrl()))
                 || url.contains("/sort/")
                 || url.matches("^.*\\.(?!html)([a-z]+)$")
                 || url.contains("%")
                 || url.contains("#")
-                || url.contains("?")) {
+                || url.contains("?")
+                || !frontier.claim(url, depth + 1)) {
                 continue;
             }
-            checkUrls.add(url);
             subtasks.add(new PageParser(url, siteEntity, siteParser, siteRepository,
-                pageRepository, lemmaRepository, indexRepository, checkUrls));
+                pageRepository, frontier, depth + 1));
         }
         return subtasks;
     }
 
+    /**
+     * Отпечаток заголовка и текста страницы: первые 8 байт SHA-256. Разметка в отпечаток не
+     * входит, поэтому меняющиеся от запроса к запросу служебные атрибуты не вызывают
+     * переиндексацию.
+     */
+    private static long contentHash(String title, String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(title.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(text.getBytes(StandardCharsets.UTF_8));
+            return ByteBuffer.wrap(digest.digest()).getLong();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
     private String getSubRootSite(String url) {
         String[] urls = url.split("/");
         String subRootSite = "";
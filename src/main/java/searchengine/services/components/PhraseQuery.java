@@ -0,0 +1,105 @@
+package searchengine.services.components;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Фразовый запрос: запрос в кавычках, например {@code "ремонт квартиры"}, находит страницы, где
+ * слова стоят в том же порядке и на тех же расстояниях. Суффикс {@code ~N} разрешает каждому
+ * слову отстоять от своего места во фразе не более чем на N словоформ.
+ *
+ * @param lemmas    леммы фразы в порядке следования в запросе
+ * @param positions номер первой словоформы каждой леммы в запросе
+ * @param slop      допустимое отклонение от места во фразе; 0 — точная фраза
+ */
+public record PhraseQuery(List<String> lemmas, List<Integer> positions, int slop) {
+
+    private static final Pattern PHRASE_PATTERN =
+        Pattern.compile("^\\s*\"([^\"]+)\"(?:~(\\d{1,3}))?\\s*$");
+
+    /**
+     * @return фраза или {@code null}, если запрос не заключён в кавычки
+     */
+    public static PhraseQuery parse(String query, Morphology morphology) {
+        Matcher matcher = PHRASE_PATTERN.matcher(query);
+        if (!matcher.matches()) {
+            return null;
+        }
+        int slop = matcher.group(2) == null ? 0 : Integer.parseInt(matcher.group(2));
+        LemmaPositions queryPositions = morphology.collectPositions(matcher.group(1));
+        List<String> lemmas = new ArrayList<>(queryPositions.lemmas());
+        lemmas.sort(Comparator.comparingInt(lemma -> queryPositions.get(lemma).positions()[0]));
+        List<Integer> positions = lemmas.stream()
+            .map(lemma -> queryPositions.get(lemma).positions()[0])
+            .toList();
+        return new PhraseQuery(lemmas, positions, slop);
+    }
+
+    /**
+     * Метод оставляет во фразе только переданные леммы, например после исключения самых частых.
+     *
+     * @return фраза или {@code null}, если в ней осталось меньше двух лемм и проверять порядок
+     * не нужно
+     */
+    public PhraseQuery retain(Collection<String> retainedLemmas) {
+        List<String> keptLemmas = new ArrayList<>();
+        List<Integer> keptPositions = new ArrayList<>();
+        for (int i = 0; i < lemmas.size(); i++) {
+            if (retainedLemmas.contains(lemmas.get(i))) {
+                keptLemmas.add(lemmas.get(i));
+                keptPositions.add(positions.get(i));
+            }
+        }
+        return keptLemmas.size() < 2 ? null : new PhraseQuery(keptLemmas, keptPositions, slop);
+    }
+
+    /**
+     * Метод проверяет, что леммы стоят в тексте страницы на местах фразы. Перебираются вхождения
+     * самой редкой леммы, остальные ищутся двоичным поиском.
+     *
+     * @param occurrences вхождения каждой леммы фразы в том же порядке; {@code null}, если
+     *                    лемма в тексте не встречается
+     */
+    public boolean matches(LemmaPositions.Occurrences[] occurrences) {
+        int anchor = 0;
+        for (int i = 0; i < occurrences.length; i++) {
+            if (occurrences[i] == null || occurrences[i].count() == 0) {
+                return false;
+            }
+            if (occurrences[i].count() < occurrences[anchor].count()) {
+                anchor = i;
+            }
+        }
+        LemmaPositions.Occurrences anchorOccurrences = occurrences[anchor];
+        for (int k = 0; k < anchorOccurrences.count(); k++) {
+            int start = anchorOccurrences.positions()[k] - positions.get(anchor);
+            boolean matched = true;
+            for (int i = 0; i < occurrences.length && matched; i++) {
+                matched = i == anchor
+                    || containsNear(occurrences[i], start + positions.get(i));
+            }
+            if (matched) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean containsNear(LemmaPositions.Occurrences occurrences, int target) {
+        int low = 0;
+        int high = occurrences.count();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (occurrences.positions()[middle] < target - slop) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low < occurrences.count() && occurrences.positions()[low] <= target + slop;
+    }
+}
@@ -0,0 +1,142 @@
+package searchengine.services.components;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+import searchengine.config.IndexingConfiguration;
+
+/**
+ * Планировщик вежливого обхода: выдаёт разрешения на загрузку страниц хоста не чаще одного раза
+ * в {@code indexing-settings.datasource.timeout} миллисекунд и не более
+ * {@code host-concurrency} одновременно. Ожидающие запросы стоят в очереди хоста, а
+ * отложенную выдачу выполняет один таймерный поток, поэтому ожидание не занимает потоки обхода.
+ */
+@Component
+@RequiredArgsConstructor
+public class PolitenessScheduler implements DisposableBean {
+
+    private final IndexingConfiguration indexingConfiguration;
+    private final Map<String, HostState> hosts = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(
+        runnable -> {
+            Thread thread = new Thread(runnable, "politeness-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+    /**
+     * Метод ставит запрос в очередь хоста.
+     *
+     * @param host имя хоста
+     * @return разрешение, которое будет выдано, когда позволит бюджет хоста
+     */
+    public CompletableFuture<Permit> acquire(String host) {
+        HostState state = hosts.computeIfAbsent(host, key -> new HostState());
+        CompletableFuture<Permit> permit = new CompletableFuture<>();
+        synchronized (state) {
+            state.waiting.add(permit);
+        }
+        dispatch(state);
+        return permit;
+    }
+
+    /**
+     * Метод ждёт разрешения, блокируя поток. Предназначен для виртуальных потоков; обход в
+     * {@link java.util.concurrent.ForkJoinPool} получает разрешения через
+     * {@link #acquire(String)}, чтобы ожидание хоста не занимало потоки пула.
+     */
+    public Permit await(String host) throws InterruptedException {
+        CompletableFuture<Permit> permit = acquire(host);
+        try {
+            permit.get();
+        } catch (ExecutionException ignored) {
+            // разрешения завершаются только успешно или отменой
+        } catch (InterruptedException ex) {
+            if (!permit.cancel(false)) {
+                permit.join().close();
+            }
+            throw ex;
+        }
+        return permit.join();
+    }
+
+    @Override
+    public void destroy() {
+        timer.shutdownNow();
+    }
+
+    private void dispatch(HostState state) {
+        long intervalNanos = TimeUnit.MILLISECONDS.toNanos(indexingConfiguration.getTimeout());
+        int concurrency = Math.max(1, indexingConfiguration.getHostConcurrency());
+        synchronized (state) {
+            while (!state.waiting.isEmpty() && state.inFlight < concurrency) {
+                long now = System.nanoTime();
+                if (now < state.nextAllowedNanos) {
+                    if (!state.timerScheduled) {
+                        state.timerScheduled = true;
+                        timer.schedule(() -> {
+                            synchronized (state) {
+                                state.timerScheduled = false;
+                            }
+                            dispatch(state);
+                        }, state.nextAllowedNanos - now, TimeUnit.NANOSECONDS);
+                    }
+                    return;
+                }
+                CompletableFuture<Permit> next = state.waiting.poll();
+                if (next.complete(new Permit(this, state))) {
+                    state.inFlight++;
+                    state.nextAllowedNanos = now + intervalNanos;
+                }
+            }
+        }
+    }
+
+    private void release(HostState state) {
+        synchronized (state) {
+            state.inFlight--;
+        }
+        dispatch(state);
+    }
+
+    private static final class HostState {
+
+        private final Queue<CompletableFuture<Permit>> waiting = new ArrayDeque<>();
+        private int inFlight;
+        private long nextAllowedNanos = System.nanoTime();
+        private boolean timerScheduled;
+    }
+
+    /**
+     * Разрешение на одну загрузку. Закрывается по окончании загрузки и освобождает место для
+     * следующего запроса к хосту.
+     */
+    public static final class Permit implements AutoCloseable {
+
+        private final PolitenessScheduler scheduler;
+        private final HostState state;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private Permit(PolitenessScheduler scheduler, HostState state) {
+            this.scheduler = scheduler;
+            this.state = state;
+        }
+
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                scheduler.release(state);
+            }
+        }
+    }
+}
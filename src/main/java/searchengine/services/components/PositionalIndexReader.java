@@ -0,0 +1,98 @@
+package searchengine.services.components;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import searchengine.repositories.IndexRepository;
+import searchengine.repositories.projections.PositionsProjection;
+
+/**
+ * Чтение позиционного индекса при поиске: проверка фраз и смещения совпадений для сниппетов.
+ * Вхождения читаются из колонки positions таблицы indexing только для нужных страниц, поэтому
+ * время проверки не зависит от длины текста страниц.
+ */
+@Component
+@RequiredArgsConstructor
+public class PositionalIndexReader {
+
+    private static final int PAGE_CHUNK_SIZE = 1000;
+
+    private final IndexRepository indexRepository;
+
+    /**
+     * Метод оставляет страницы, в тексте которых леммы стоят на местах фразы. Страницы,
+     * проиндексированные без позиций, фразе не соответствуют.
+     *
+     * @param pageIds  страницы, содержащие все леммы фразы
+     * @param phrase   фраза запроса
+     * @param lemmaIds идентификаторы лемм фразы на сайте в порядке {@link PhraseQuery#lemmas()}
+     */
+    public PageIdBitmap filterPhrase(PageIdBitmap pageIds, PhraseQuery phrase, long[] lemmaIds) {
+        List<Long> lemmaIdList = Arrays.stream(lemmaIds).boxed().toList();
+        Map<Long, Integer> lemmaIndexes = new HashMap<>();
+        for (int i = 0; i < lemmaIds.length; i++) {
+            lemmaIndexes.put(lemmaIds[i], i);
+        }
+        int[] matched = new int[pageIds.cardinality()];
+        int matchedCount = 0;
+        List<Long> chunk = new ArrayList<>(PAGE_CHUNK_SIZE);
+        int[] allPageIds = new int[pageIds.cardinality()];
+        int[] cursor = {0};
+        pageIds.forEach(pageId -> allPageIds[cursor[0]++] = pageId);
+        for (int from = 0; from < allPageIds.length; from += PAGE_CHUNK_SIZE) {
+            int to = Math.min(allPageIds.length, from + PAGE_CHUNK_SIZE);
+            chunk.clear();
+            for (int i = from; i < to; i++) {
+                chunk.add((long) allPageIds[i]);
+            }
+            Map<Long, LemmaPositions.Occurrences[]> pageOccurrences = new HashMap<>();
+            for (PositionsProjection row : indexRepository.findPositions(lemmaIdList, chunk)) {
+                if (row.getPositions() != null) {
+                    pageOccurrences.computeIfAbsent(row.getPageId(),
+                            key -> new LemmaPositions.Occurrences[lemmaIds.length])
+                        [lemmaIndexes.get(row.getLemmaId())] =
+                        LemmaPositions.decode(row.getPositions());
+                }
+            }
+            for (int i = from; i < to; i++) {
+                LemmaPositions.Occurrences[] occurrences = pageOccurrences.get(
+                    (long) allPageIds[i]);
+                if (occurrences != null && phrase.matches(occurrences)) {
+                    matched[matchedCount++] = allPageIds[i];
+                }
+            }
+        }
+        return PageIdBitmap.fromSorted(matched, matchedCount);
+    }
+
+    /**
+     * @return смещения словоформ лемм запроса в тексте каждой страницы по возрастанию;
+     * страниц, проиндексированных без позиций, в результате нет
+     */
+    public Map<Long, int[]> findMatchOffsets(List<Long> pageIds, List<String> lemmas) {
+        Map<Long, int[]> matchOffsets = new HashMap<>();
+        if (pageIds.isEmpty() || lemmas.isEmpty()) {
+            return matchOffsets;
+        }
+        for (PositionsProjection row : indexRepository.findPositionsByLemmas(pageIds, lemmas)) {
+            if (row.getPositions() == null) {
+                continue;
+            }
+            LemmaPositions.Occurrences occurrences = LemmaPositions.decode(row.getPositions());
+            int[] offsets = Arrays.copyOf(occurrences.offsets(), occurrences.count());
+            matchOffsets.merge(row.getPageId(), offsets, PositionalIndexReader::concat);
+        }
+        matchOffsets.values().forEach(Arrays::sort);
+        return matchOffsets;
+    }
+
+    private static int[] concat(int[] first, int[] second) {
+        int[] result = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+}
@@ -0,0 +1,137 @@
+package searchengine.services.components;
+
+import java.util.Arrays;
+
+/**
+ * Неизменяемый список вхождений леммы: сжатое множество идентификаторов страниц и параллельный
+ * массив рангов, упорядоченный так же, как идентификаторы. Ранг страницы читается по её
+ * порядковому номеру в множестве.
+ */
+public final class PostingList {
+
+    public static final PostingList EMPTY = new PostingList(PageIdBitmap.EMPTY, new float[0]);
+    private static final int INITIAL_CAPACITY = 4;
+
+    private final PageIdBitmap pageIds;
+    private final float[] ratings;
+
+    private PostingList(PageIdBitmap pageIds, float[] ratings) {
+        this.pageIds = pageIds;
+        this.ratings = ratings;
+    }
+
+    public int size() {
+        return pageIds.cardinality();
+    }
+
+    public boolean isEmpty() {
+        return pageIds.isEmpty();
+    }
+
+    public PageIdBitmap pageIds() {
+        return pageIds;
+    }
+
+    public RatingCursor ratingCursor() {
+        return new RatingCursor(pageIds.rankCursor());
+    }
+
+    /**
+     * Возвращает список с добавленным вхождением. Добавление в конец переиспользует свободную
+     * ёмкость массивов: предыдущий экземпляр не видит новый элемент, так как читает только свои
+     * {@code size} элементов. Повторное добавление уже имеющейся страницы игнорируется.
+     *
+     * @param pageId идентификатор страницы
+     * @param rating ранг леммы на странице
+     * @return список, содержащий вхождение
+     */
+    public PostingList with(long pageId, float rating) {
+        int id = Math.toIntExact(pageId);
+        int size = size();
+        if (size == 0 || id > pageIds.last()) {
+            float[] newRatings = ratings;
+            if (size == ratings.length) {
+                newRatings = Arrays.copyOf(ratings, Math.max(INITIAL_CAPACITY, size + (size >> 1)));
+            }
+            newRatings[size] = rating;
+            return new PostingList(pageIds.with(id), newRatings);
+        }
+        if (pageIds.contains(id)) {
+            return this;
+        }
+        int insertAt = pageIds.rank(id);
+        float[] newRatings = new float[Math.max(INITIAL_CAPACITY, size + 1 + (size >> 1))];
+        System.arraycopy(ratings, 0, newRatings, 0, insertAt);
+        newRatings[insertAt] = rating;
+        System.arraycopy(ratings, insertAt, newRatings, insertAt + 1, size - insertAt);
+        return new PostingList(pageIds.with(id), newRatings);
+    }
+
+    /**
+     * Возвращает список без вхождения страницы, например перед повторной индексацией
+     * изменившейся страницы.
+     */
+    public PostingList without(long pageId) {
+        int id = Math.toIntExact(pageId);
+        if (!pageIds.contains(id)) {
+            return this;
+        }
+        Builder builder = new Builder();
+        int[] index = new int[1];
+        pageIds.forEach(page -> {
+            if (page != id) {
+                builder.add(page, ratings[index[0]]);
+            }
+            index[0]++;
+        });
+        return builder.build();
+    }
+
+    /**
+     * Курсор чтения рангов для возрастающей последовательности страниц из списка.
+     */
+    public final class RatingCursor {
+
+        private final PageIdBitmap.RankCursor rankCursor;
+
+        private RatingCursor(PageIdBitmap.RankCursor rankCursor) {
+            this.rankCursor = rankCursor;
+        }
+
+        public float rating(int pageId) {
+            return ratings[rankCursor.rank(pageId)];
+        }
+    }
+
+    /**
+     * Построитель списка из вхождений, поступающих в порядке возрастания идентификатора страницы.
+     */
+    public static final class Builder {
+
+        private int[] pageIds = new int[INITIAL_CAPACITY];
+        private float[] ratings = new float[INITIAL_CAPACITY];
+        private int size;
+
+        public void add(long pageId, float rating) {
+            int id = Math.toIntExact(pageId);
+            if (size > 0 && id <= pageIds[size - 1]) {
+                if (id == pageIds[size - 1]) {
+                    return;
+                }
+                throw new IllegalArgumentException("Вхождения должны идти по возрастанию страниц");
+            }
+            if (size == pageIds.length) {
+                pageIds = Arrays.copyOf(pageIds, size + (size >> 1));
+                ratings = Arrays.copyOf(ratings, size + (size >> 1));
+            }
+            pageIds[size] = id;
+            ratings[size] = rating;
+            size++;
+        }
+
+        public PostingList build() {
+            return new PostingList(PageIdBitmap.fromSorted(pageIds, size),
+                Arrays.copyOf(ratings, size));
+        }
+    }
+}
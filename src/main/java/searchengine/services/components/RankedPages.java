@@ -0,0 +1,33 @@
+package searchengine.services.components;
+
+/**
+ * Лучшие страницы поискового запроса в порядке убывания абсолютного ранга вместе с общим числом
+ * найденных страниц и максимальным рангом для нормализации релевантности.
+ *
+ * @param pageIds    идентификаторы страниц, от лучшей к худшей
+ * @param scores     абсолютные ранги страниц
+ * @param totalCount общее число страниц, удовлетворяющих запросу
+ * @param maxScore   максимальный абсолютный ранг среди всех найденных страниц
+ */
+public record RankedPages(long[] pageIds, float[] scores, int totalCount, float maxScore) {
+
+    public int size() {
+        return pageIds.length;
+    }
+
+    /**
+     * Проверяет, хватает ли ранжированных страниц, чтобы отдать выдачу до указанной глубины.
+     */
+    public boolean covers(int depth) {
+        return pageIds.length >= Math.min(depth, totalCount);
+    }
+
+    /**
+     * Проверяет, что страница курсора стоит в ранжировании непосредственно перед его смещением,
+     * то есть выдачу можно продолжить с этого смещения без пропусков и повторов.
+     */
+    public boolean continues(SearchCursor cursor) {
+        int last = cursor.offset() - 1;
+        return last >= 0 && last < pageIds.length && pageIds[last] == cursor.pageId();
+    }
+}
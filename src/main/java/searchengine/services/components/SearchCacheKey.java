@@ -0,0 +1,22 @@
+package searchengine.services.components;
+
+import java.util.List;
+
+/**
+ * Ключ кэша поиска: отсортированные леммы запроса, фраза и фильтр по сайту. Разные словоформы
+ * одних и тех же слов дают одинаковый ключ.
+ *
+ * @param lemmas леммы запроса в лексикографическом порядке
+ * @param site   адрес сайта или {@code null} для поиска по всем сайтам
+ * @param phrase фраза запроса или {@code null}, если порядок слов не важен
+ */
+public record SearchCacheKey(List<String> lemmas, String site, PhraseQuery phrase) {
+
+    public static SearchCacheKey of(List<String> lemmas, String site) {
+        return of(lemmas, site, null);
+    }
+
+    public static SearchCacheKey of(List<String> lemmas, String site, PhraseQuery phrase) {
+        return new SearchCacheKey(lemmas.stream().sorted().toList(), site, phrase);
+    }
+}
@@ -0,0 +1,59 @@
+package searchengine.services.components;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import searchengine.exceptions.SearchInvalidCursorException;
+
+/**
+ * Позиция в поисковой выдаче: ранг и идентификатор последней отданной страницы, её порядковый
+ * номер и поколение индекса, на котором выдача была построена. Клиенту передаётся в виде
+ * непрозрачной строки.
+ *
+ * @param generation поколение индекса
+ * @param offset     число уже отданных результатов
+ * @param score      абсолютный ранг последней страницы
+ * @param pageId     идентификатор последней страницы
+ */
+public record SearchCursor(long generation, int offset, float score, long pageId) {
+
+    private static final int ENCODED_SIZE = Long.BYTES + Integer.BYTES + Float.BYTES + Long.BYTES;
+    /**
+     * Смещение, к которому можно прибавить размер окна выдачи без переполнения.
+     */
+    private static final int MAX_OFFSET = Integer.MAX_VALUE / 2;
+
+    public String encode() {
+        ByteBuffer buffer = ByteBuffer.allocate(ENCODED_SIZE)
+            .putLong(generation)
+            .putInt(offset)
+            .putFloat(score)
+            .putLong(pageId);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+    }
+
+    public static SearchCursor decode(String token) {
+        byte[] bytes;
+        try {
+            bytes = Base64.getUrlDecoder().decode(token);
+        } catch (IllegalArgumentException ex) {
+            throw new SearchInvalidCursorException();
+        }
+        if (bytes.length != ENCODED_SIZE) {
+            throw new SearchInvalidCursorException();
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        SearchCursor cursor = new SearchCursor(buffer.getLong(), buffer.getInt(),
+            buffer.getFloat(), buffer.getLong());
+        if (cursor.offset < 0 || cursor.offset > MAX_OFFSET || Float.isNaN(cursor.score)) {
+            throw new SearchInvalidCursorException();
+        }
+        return cursor;
+    }
+
+    /**
+     * Проверяет, что страница идёт в выдаче строго после позиции курсора.
+     */
+    public boolean precedes(float otherScore, long otherPageId) {
+        return TopPagesCollector.isBetter(score, pageId, otherScore, otherPageId);
+    }
+}
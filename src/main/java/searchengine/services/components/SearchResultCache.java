@@ -0,0 +1,127 @@
+package searchengine.services.components;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import searchengine.config.SearchConfiguration;
+import searchengine.dto.search.DataSearchItem;
+
+/**
+ * LRU-кэш результатов поиска с ограничением по приблизительному объёму. Для каждого ключа хранит
+ * ранжированные страницы и уже отрисованные окна выдачи. Записи, построенные на другом поколении
+ * индекса, считаются устаревшими и удаляются при обращении.
+ */
+@Component
+@RequiredArgsConstructor
+public class SearchResultCache {
+
+    private static final int ENTRY_OVERHEAD = 64;
+    private static final int PAGE_WEIGHT = Long.BYTES + Float.BYTES;
+    private static final int ITEM_OVERHEAD = 48;
+
+    private final SearchConfiguration searchConfiguration;
+    private final LinkedHashMap<SearchCacheKey, Entry> entries =
+        new LinkedHashMap<>(16, 0.75f, true);
+    private long totalWeight;
+
+    /**
+     * Метод возвращает запись кэша, если она построена на текущем поколении индекса.
+     *
+     * @param key        ключ запроса
+     * @param generation текущее поколение индекса
+     * @return запись кэша или {@code null}
+     */
+    public synchronized Entry get(SearchCacheKey key, long generation) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.generation != generation) {
+            remove(key);
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Метод сохраняет ранжирование запроса и отрисованное окно выдачи. Если ранжирование уже
+     * хранится для этого поколения, к нему добавляется только новое окно.
+     */
+    public synchronized void put(SearchCacheKey key, long generation, RankedPages rankedPages,
+        int offset, int limit, List<DataSearchItem> items) {
+        Entry entry = entries.get(key);
+        if (entry == null || entry.generation != generation
+            || entry.rankedPages != rankedPages) {
+            remove(key);
+            entry = new Entry(generation, rankedPages);
+            entries.put(key, entry);
+            totalWeight += entry.weight;
+        }
+        long itemsWeight = weigh(items);
+        if (entry.windows.putIfAbsent(windowKey(offset, limit), items) == null) {
+            entry.weight += itemsWeight;
+            totalWeight += itemsWeight;
+        }
+        evict();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        totalWeight = 0;
+    }
+
+    private void remove(SearchCacheKey key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            totalWeight -= removed.weight;
+        }
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<SearchCacheKey, Entry>> iterator = entries.entrySet().iterator();
+        while (totalWeight > searchConfiguration.getCacheMaxWeight() && iterator.hasNext()) {
+            totalWeight -= iterator.next().getValue().weight;
+            iterator.remove();
+        }
+    }
+
+    private static long weigh(List<DataSearchItem> items) {
+        long weight = 0;
+        for (DataSearchItem item : items) {
+            weight += ITEM_OVERHEAD;
+            weight += item.getTitle() == null ? 0 : 2L * item.getTitle().length();
+            weight += item.getSnippet() == null ? 0 : 2L * item.getSnippet().length();
+        }
+        return weight;
+    }
+
+    private static long windowKey(int offset, int limit) {
+        return ((long) offset << Integer.SIZE) | limit;
+    }
+
+    public static final class Entry {
+
+        private final long generation;
+        private final RankedPages rankedPages;
+        private final Map<Long, List<DataSearchItem>> windows = new ConcurrentHashMap<>();
+        private long weight;
+
+        private Entry(long generation, RankedPages rankedPages) {
+            this.generation = generation;
+            this.rankedPages = rankedPages;
+            this.weight = ENTRY_OVERHEAD + (long) rankedPages.size() * PAGE_WEIGHT;
+        }
+
+        public RankedPages getRankedPages() {
+            return rankedPages;
+        }
+
+        public List<DataSearchItem> getWindow(int offset, int limit) {
+            return windows.get(windowKey(offset, limit));
+        }
+    }
+}
@@ -6,14 +6,17 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ForkJoinPool;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.lucene.morphology.LuceneMorphology;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.retry.support.RetryTemplate;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import searchengine.config.CrawlEngine;
+import searchengine.config.CrawlerConfiguration;
 import searchengine.config.IndexingConfiguration;
 import searchengine.model.IndexEntity;
 import searchengine.model.LemmaEntity;
@@ -32,17 +35,49 @@ public class SiteParser {
 
     private final IndexingConfiguration indexingConfiguration;
     @Getter
-    @Autowired
-    private final LuceneMorphology luceneMorphology;
+    private final CrawlerConfiguration crawlerConfiguration;
+    @Getter
+    private final WordFormCache wordFormCache;
     @Autowired
     private final SiteRepository siteRepository;
     @Autowired
     private final PageRepository pageRepository;
     @Autowired
     private final LemmaRepository lemmaRepository;
+    @Getter
     @Autowired
     private final IndexRepository indexRepository;
-    private ForkJoinPool pool;
+    @Getter
+    private final InvertedIndex invertedIndex;
+    @Getter
+    private final LemmaDictionary lemmaDictionary;
+    @Getter
+    private final IndexGeneration indexGeneration;
+    @Getter
+    private final StopLemmaTracker stopLemmaTracker;
+    private final IndexSegmentStore indexSegmentStore;
+    @Getter
+    private final PolitenessScheduler politenessScheduler;
+    @Getter
+    private final DatabaseAccessLimiter databaseAccessLimiter;
+    @Getter
+    private final LemmaUpsertWriter lemmaUpsertWriter;
+    @Getter
+    private final IdRangeAllocator idRangeAllocator;
+    @Getter
+    private final IndexBulkWriter indexBulkWriter;
+    @Getter
+    private final TransactionTemplate transactionTemplate;
+    private final VirtualThreadCrawler virtualThreadCrawler;
+    private final CrawlPipeline crawlPipeline;
+    private final IndexSegmentWriter indexSegmentWriter;
+    private final CrawlCheckpointer crawlCheckpointer;
+    private final IndexWarmer indexWarmer;
+    @Getter
+    private final CrawlScheduler crawlScheduler;
+    @Getter
+    private final NearDuplicateIndex nearDuplicateIndex;
+    private final Map<Long, ForkJoinPool> pools = new ConcurrentHashMap<>();
     @Autowired
     private RetryTemplate retryTemplate;
     /**
@@ -53,18 +88,58 @@ public class SiteParser {
      */
 
     public void parseSite(SiteEntity siteModel) {
+        crawlSite(siteModel, PageParser.crawl(siteModel, this, siteRepository, pageRepository));
+    }
+
+    /**
+     * Метод продолжает прерванный обход сайта с незавершённых страниц контрольной точки.
+     *
+     * @param siteModel сайт, обход которого продолжается
+     * @param frontier  множество адресов, восстановленное из контрольной точки
+     */
+    public void resumeSite(SiteEntity siteModel, UrlFrontier frontier) {
+        log.info("Продолжение обхода {}: в очереди {} страниц", siteModel.getUrl(),
+            frontier.getPending().size());
+        crawlSite(siteModel, PageParser.resume(siteModel, this, siteRepository, pageRepository,
+            frontier));
+    }
+
+    private void crawlSite(SiteEntity siteModel, PageParser rootParser) {
         long start = System.currentTimeMillis();
+        indexGeneration.bump();
+        indexSegmentStore.delete(siteModel.getId());
+        crawlCheckpointer.register(siteModel, rootParser.getFrontier());
+        crawlScheduler.register(siteModel);
+
+        if (crawlerConfiguration.getEngine() == CrawlEngine.VIRTUAL_THREADS) {
+            parseSiteOnVirtualThreads(siteModel, rootParser);
+            return;
+        }
+        if (crawlerConfiguration.getEngine() == CrawlEngine.PIPELINE) {
+            parseSiteOnPipeline(siteModel, rootParser);
+            return;
+        }
+        parseSiteOnPool(siteModel, rootParser);
+    }
 
-        if (!isIndexing()) {
-            pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    /**
+     * Метод обходит сайт в собственном пуле, размер которого не превышает ограничения сайта в
+     * {@link CrawlScheduler}. Страницы ждут разрешений вне пула, см. {@link ForkJoinSiteCrawl}.
+     * Пул закрывается по окончании обхода сайта и не мешает обходу остальных.
+     *
+     * @param siteModel сайт, который нужно проиндексировать.
+     */
+    private void parseSiteOnPool(SiteEntity siteModel, PageParser rootParser) {
+        ForkJoinPool pool = new ForkJoinPool(Math.min(Runtime.getRuntime().availableProcessors(),
+            crawlScheduler.getConcurrencyLimit(siteModel.getId())));
+        ForkJoinPool previous = pools.put(siteModel.getId(), pool);
+        if (previous != null) {
+            previous.shutdownNow();
         }
 
         try {
-            CompletableFuture.runAsync(() -> {
-                    PageParser parser = new PageParser("/", siteModel, this,
-                        siteRepository, pageRepository, lemmaRepository, indexRepository);
-                    pool.invoke(parser);
-                }, pool)
+            new ForkJoinSiteCrawl(pool).start(rootParser)
+                .thenRunAsync(() -> finishSite(siteModel), pool)
                 .handle((res, ex) -> {
                     if (ex != null) {
                         handleError(siteModel, ex);
@@ -74,13 +149,66 @@ public class SiteParser {
                 .thenRun(() -> {
                     // Логика завершения
                     pool.shutdown();
+                    pools.remove(siteModel.getId(), pool);
                 });
         } catch (Exception e) {
             handleError(siteModel, e);
         }
     }
 
+    /**
+     * Метод обходит сайт в отдельной области виртуальных потоков. Область регистрируется до
+     * запуска, поэтому индексация считается начатой сразу после возврата из метода.
+     *
+     * @param siteModel сайт, который нужно проиндексировать.
+     */
+    private void parseSiteOnVirtualThreads(SiteEntity siteModel, PageParser rootParser) {
+        VirtualThreadCrawler.SiteScope scope = virtualThreadCrawler.open(siteModel.getName());
+        CompletableFuture.runAsync(() -> {
+                scope.run(rootParser);
+                finishSite(siteModel);
+            }, task -> Thread.ofVirtual().name("crawl-" + siteModel.getName()).start(task))
+            .exceptionally(ex -> {
+                handleError(siteModel, ex);
+                return null;
+            });
+    }
+
+    /**
+     * Метод передаёт главную страницу сайта конвейеру обхода. Выгрузка сегмента после обхода
+     * выполняется в отдельном потоке, чтобы не занимать потоки стадий.
+     *
+     * @param siteModel сайт, который нужно проиндексировать.
+     */
+    private void parseSiteOnPipeline(SiteEntity siteModel, PageParser rootParser) {
+        crawlPipeline.start(rootParser)
+            .completion()
+            .thenRunAsync(() -> finishSite(siteModel),
+                task -> Thread.ofVirtual().name("export-" + siteModel.getName()).start(task))
+            .exceptionally(ex -> {
+                handleError(siteModel, ex);
+                return null;
+            });
+    }
+
+    /**
+     * Метод дописывает индекс сайта из буфера пакетной записи, удаляет контрольную точку
+     * завершённого обхода, выгружает сегмент индекса сайта и загружает индекс для поиска. Если
+     * индекс не записан, контрольная точка остаётся, и обход можно продолжить.
+     */
+    private void finishSite(SiteEntity siteModel) {
+        indexBulkWriter.flush();
+        crawlScheduler.unregister(siteModel.getId());
+        crawlCheckpointer.complete(siteModel.getId());
+        indexSegmentWriter.export(siteModel);
+        indexWarmer.warmUpAsync(siteModel.getId());
+        wordFormCache.logStatistics();
+    }
+
     private void handleError(SiteEntity siteModel, Throwable ex) {
+        indexGeneration.bump();
+        crawlScheduler.unregister(siteModel.getId());
+        crawlCheckpointer.suspend(siteModel.getId());
         retryTemplate.execute(context -> {
             siteModel.setStatus(Status.FAILED);
             siteModel.setLastError(ex.getCause().getMessage());
@@ -133,11 +261,16 @@ public class SiteParser {
     }
 
     public void stopPoolIndexing() {
-        pool.shutdownNow();
+        pools.values().forEach(ForkJoinPool::shutdownNow);
+        virtualThreadCrawler.stopAll();
+        crawlPipeline.stopAll();
+        crawlCheckpointer.suspendAll();
     }
 
     public boolean isIndexing() {
-        return pool != null && !pool.isShutdown();
+        return pools.values().stream().anyMatch(pool -> !pool.isShutdown())
+            || virtualThreadCrawler.isRunning()
+            || crawlPipeline.isRunning();
     }
 
     public IndexingConfiguration getConfig() {
@@ -0,0 +1,83 @@
+package searchengine.services.components;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+import searchengine.config.SearchConfiguration;
+import searchengine.model.SiteEntity;
+
+/**
+ * Параллельный поиск по нескольким сайтам. Каждый сайт ранжируется в отдельном виртуальном
+ * потоке, лучшие страницы сайтов сливаются в общую ограниченную кучу. Сайты, не уложившиеся в
+ * отведённое запросу время, исключаются из выдачи и возвращаются списком.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SiteSearchExecutor implements DisposableBean {
+
+    private final SearchConfiguration searchConfiguration;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    /**
+     * Метод запускает ранжирование всех сайтов одновременно и ждёт результатов не дольше
+     * {@code search-settings.timeout} миллисекунд.
+     *
+     * @param siteEntities сайты для поиска
+     * @param depth        сколько лучших страниц нужно отобрать
+     * @param siteRanking  ранжирование одного сайта
+     * @return объединённые лучшие страницы и сайты, не вошедшие в выдачу
+     */
+    public MergedRanking rankSites(List<SiteEntity> siteEntities, int depth,
+        Function<SiteEntity, RankedPages> siteRanking) {
+        List<Callable<RankedPages>> tasks = new ArrayList<>();
+        for (SiteEntity siteEntity : siteEntities) {
+            tasks.add(() -> siteRanking.apply(siteEntity));
+        }
+        List<Future<RankedPages>> futures;
+        try {
+            futures = executor.invokeAll(tasks, searchConfiguration.getTimeout(),
+                TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return new MergedRanking(new TopPagesCollector(0).drainSorted(),
+                siteEntities.stream().map(SiteEntity::getName).toList());
+        }
+
+        TopPagesCollector collector = new TopPagesCollector(depth);
+        List<String> unavailableSites = new ArrayList<>();
+        for (int i = 0; i < futures.size(); i++) {
+            SiteEntity siteEntity = siteEntities.get(i);
+            try {
+                collector.merge(futures.get(i).get());
+            } catch (CancellationException ex) {
+                log.warn("Сайт {} не ответил за {} мс", siteEntity.getUrl(),
+                    searchConfiguration.getTimeout());
+                unavailableSites.add(siteEntity.getName());
+            } catch (ExecutionException ex) {
+                log.error("Ошибка поиска по сайту {}", siteEntity.getUrl(), ex.getCause());
+                unavailableSites.add(siteEntity.getName());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                unavailableSites.add(siteEntity.getName());
+            }
+        }
+        return new MergedRanking(collector.drainSorted(), unavailableSites);
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,146 @@
+package searchengine.services.components;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Приблизительный счётчик самых частых элементов потока по алгоритму Space-Saving. Отслеживает не
+ * более {@code capacity} элементов; когда место заканчивается, вытесняется элемент с наименьшим
+ * счётчиком, а новый наследует его значение как верхнюю оценку ошибки. Элементы хранятся в
+ * минимальной куче, поэтому учёт одного вхождения стоит O(log capacity).
+ *
+ * <p>Счётчик элемента завышен не больше чем на унаследованную ошибку, поэтому разность счётчика
+ * и ошибки — гарантированное число вхождений.
+ */
+public final class SpaceSavingCounter {
+
+    private final int capacity;
+    private final String[] items;
+    private final long[] counts;
+    private final long[] errors;
+    private final Map<String, Integer> positions;
+    private int size;
+
+    public SpaceSavingCounter(int capacity) {
+        this.capacity = capacity;
+        this.items = new String[capacity];
+        this.counts = new long[capacity];
+        this.errors = new long[capacity];
+        this.positions = new HashMap<>(capacity * 4 / 3 + 1);
+    }
+
+    /**
+     * Метод учитывает вхождения элемента. Отрицательный вес уменьшает счётчик отслеживаемого
+     * элемента и игнорируется для неотслеживаемого.
+     *
+     * @param item   элемент потока
+     * @param weight число вхождений
+     */
+    public void offer(String item, long weight) {
+        Integer position = positions.get(item);
+        if (position != null) {
+            counts[position] += weight;
+            if (weight > 0) {
+                siftDown(position);
+            } else {
+                siftUp(position);
+            }
+            return;
+        }
+        if (weight <= 0 || capacity == 0) {
+            return;
+        }
+        if (size < capacity) {
+            items[size] = item;
+            counts[size] = weight;
+            errors[size] = 0;
+            positions.put(item, size);
+            siftUp(size++);
+            return;
+        }
+        positions.remove(items[0]);
+        items[0] = item;
+        errors[0] = counts[0];
+        counts[0] += weight;
+        positions.put(item, 0);
+        siftDown(0);
+    }
+
+    /**
+     * Метод возвращает до {@code limit} элементов с наибольшими счётчиками, которые заведомо
+     * входят в {@code limit} самых частых: их гарантированное число вхождений не меньше
+     * счётчика следующего по порядку элемента. Элементы, попавшие в счётчик вытеснением и
+     * обязанные своим счётчиком в основном ошибке, не возвращаются.
+     */
+    public List<String> top(int limit) {
+        List<Integer> order = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            order.add(i);
+        }
+        order.sort((left, right) -> Long.compare(counts[right], counts[left]));
+        long threshold = limit < order.size() ? counts[order.get(limit)]
+            : size == capacity && size > 0 ? counts[0] : 0;
+        List<String> top = new ArrayList<>(Math.min(limit, size));
+        for (int i = 0; i < order.size() && i < limit; i++) {
+            int index = order.get(i);
+            if (counts[index] - errors[index] >= threshold) {
+                top.add(items[index]);
+            }
+        }
+        return top;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (counts[parent] <= counts[index]) {
+                return;
+            }
+            swap(index, parent);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int index) {
+        while (true) {
+            int left = 2 * index + 1;
+            if (left >= size) {
+                return;
+            }
+            int smallest = left;
+            int right = left + 1;
+            if (right < size && counts[right] < counts[left]) {
+                smallest = right;
+            }
+            if (counts[index] <= counts[smallest]) {
+                return;
+            }
+            swap(index, smallest);
+            index = smallest;
+        }
+    }
+
+    private void swap(int i, int j) {
+        String item = items[i];
+        items[i] = items[j];
+        items[j] = item;
+        long count = counts[i];
+        counts[i] = counts[j];
+        counts[j] = count;
+        long error = errors[i];
+        errors[i] = errors[j];
+        errors[j] = error;
+        positions.put(items[i], i);
+        positions.put(items[j], j);
+    }
+}
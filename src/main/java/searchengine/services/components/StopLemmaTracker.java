@@ -0,0 +1,217 @@
+package searchengine.services.components;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import searchengine.config.SearchConfiguration;
+import searchengine.model.SiteEntity;
+import searchengine.repositories.SiteRepository;
+
+/**
+ * Множество самых частых лемм, исключаемых из поисковых запросов. Ведётся отдельно для каждого
+ * сайта и для всех сайтов вместе; индексатор сообщает о каждом увеличении частоты, поэтому при
+ * поиске не нужно сортировать таблицу lemma.
+ *
+ * <p>Счётчик отслеживает в {@value #CAPACITY_FACTOR} раза больше лемм, чем исключается, но не
+ * меньше {@code stop-lemma-capacity}. Когда словарь вырастает и исключаемых лемм становится
+ * больше, счётчик заполняется заново из словаря с большей ёмкостью.
+ *
+ * <p>Множество сайтов для поиска по всем сайтам хранится в памяти: оно читается из таблицы site
+ * один раз и дальше изменяется при регистрации и удалении сайтов.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class StopLemmaTracker {
+
+    private static final double EXCLUDE_TOP_LEMMAS_PERCENT = 0.001;
+    private static final int CAPACITY_FACTOR = 4;
+
+    private final LemmaDictionary lemmaDictionary;
+    private final SiteRepository siteRepository;
+    private final SearchConfiguration searchConfiguration;
+    private final IndexGeneration indexGeneration;
+    private final Map<Long, Scope> siteScopes = new ConcurrentHashMap<>();
+    private volatile Scope globalScope;
+    private volatile GlobalLemmasCount globalLemmasCount;
+    private volatile Set<Long> siteIds;
+
+    /**
+     * Метод учитывает увеличение на единицу частоты лемм страницы.
+     *
+     * @param siteId идентификатор сайта
+     * @param lemmas леммы проиндексированной страницы
+     */
+    public void increment(Long siteId, Collection<String> lemmas) {
+        offer(siteId, lemmas, 1);
+    }
+
+    /**
+     * Метод добавляет созданный сайт в поиск по всем сайтам.
+     */
+    public void registerSite(Long siteId) {
+        getSiteIds().add(siteId);
+    }
+
+    /**
+     * Метод учитывает уменьшение на единицу частоты лемм страницы, удалённой из индекса.
+     */
+    public void decrement(Long siteId, Collection<String> lemmas) {
+        offer(siteId, lemmas, -1);
+    }
+
+    /**
+     * Метод возвращает множество исключаемых лемм сайта или всех сайтов.
+     *
+     * @param siteId идентификатор сайта или {@code null} для поиска по всем сайтам
+     * @return множество лемм с проверкой вхождения за O(1)
+     */
+    public Set<String> getStopLemmas(Long siteId) {
+        if (siteId != null) {
+            int limit = getStopLemmasLimit(lemmaDictionary.size(siteId));
+            return siteScopes.compute(siteId, (id, scope) -> scope != null && scope.fits(limit)
+                    ? scope : seedSite(id, limit))
+                .getStopLemmas(limit);
+        }
+        int limit = getStopLemmasLimit(getGlobalLemmasCount());
+        Scope global = globalScope;
+        if (global == null || !global.fits(limit)) {
+            global = seedGlobal(limit);
+        }
+        return global.getStopLemmas(limit);
+    }
+
+    private static int getStopLemmasLimit(int lemmasCount) {
+        return (int) (lemmasCount * EXCLUDE_TOP_LEMMAS_PERCENT);
+    }
+
+    /**
+     * Метод считает леммы всех сайтов один раз на поколение индекса: число меняется только
+     * вместе с индексом.
+     */
+    private int getGlobalLemmasCount() {
+        long generation = indexGeneration.current();
+        GlobalLemmasCount count = globalLemmasCount;
+        if (count == null || count.generation() != generation) {
+            int lemmasCount = 0;
+            for (Long siteId : getSiteIds()) {
+                lemmasCount += lemmaDictionary.size(siteId);
+            }
+            count = new GlobalLemmasCount(generation, lemmasCount);
+            globalLemmasCount = count;
+        }
+        return count.lemmasCount();
+    }
+
+    private int getCapacity(int limit) {
+        return (int) Math.min(Integer.MAX_VALUE - 8,
+            Math.max((long) searchConfiguration.getStopLemmaCapacity(),
+                (long) limit * CAPACITY_FACTOR));
+    }
+
+    private void offer(Long siteId, Collection<String> lemmas, long weight) {
+        Scope siteScope = siteScopes.get(siteId);
+        if (siteScope != null) {
+            siteScope.offer(lemmas, weight);
+        }
+        Scope global = globalScope;
+        if (global != null) {
+            global.offer(lemmas, weight);
+        }
+    }
+
+    public void evictSite(Long siteId) {
+        getSiteIds().remove(siteId);
+        siteScopes.remove(siteId);
+        globalScope = null;
+        globalLemmasCount = null;
+    }
+
+    private Scope seedSite(Long siteId, int limit) {
+        Scope scope = new Scope(getCapacity(limit));
+        for (LemmaInfo lemmaInfo : lemmaDictionary.getLemmas(siteId)) {
+            scope.offer(lemmaInfo.getLemma(), lemmaInfo.getFrequency());
+        }
+        return scope;
+    }
+
+    private synchronized Scope seedGlobal(int limit) {
+        if (globalScope != null && globalScope.fits(limit)) {
+            return globalScope;
+        }
+        Scope scope = new Scope(getCapacity(limit));
+        for (Long siteId : getSiteIds()) {
+            for (LemmaInfo lemmaInfo : lemmaDictionary.getLemmas(siteId)) {
+                scope.offer(lemmaInfo.getLemma(), lemmaInfo.getFrequency());
+            }
+        }
+        globalScope = scope;
+        log.info("Частые леммы всех сайтов загружены: {}", scope.counter.size());
+        return scope;
+    }
+
+    private Set<Long> getSiteIds() {
+        Set<Long> ids = siteIds;
+        if (ids == null) {
+            synchronized (this) {
+                ids = siteIds;
+                if (ids == null) {
+                    ids = ConcurrentHashMap.newKeySet();
+                    for (SiteEntity siteEntity : siteRepository.getAllSite()) {
+                        ids.add(siteEntity.getId());
+                    }
+                    siteIds = ids;
+                }
+            }
+        }
+        return ids;
+    }
+
+    private static final class Scope {
+
+        private final SpaceSavingCounter counter;
+        private Set<String> stopLemmas = Set.of();
+        private int stopLemmasLimit = -1;
+        private boolean dirty = true;
+
+        private Scope(int capacity) {
+            this.counter = new SpaceSavingCounter(capacity);
+        }
+
+        private synchronized void offer(String lemma, long weight) {
+            counter.offer(lemma, weight);
+            dirty = true;
+        }
+
+        private synchronized void offer(Collection<String> lemmas, long weight) {
+            for (String lemma : lemmas) {
+                counter.offer(lemma, weight);
+            }
+            dirty = true;
+        }
+
+        /**
+         * @return {@code true}, если ёмкости счётчика хватает для {@code limit} исключаемых лемм
+         */
+        private boolean fits(int limit) {
+            return (long) limit * CAPACITY_FACTOR <= counter.capacity();
+        }
+
+        private synchronized Set<String> getStopLemmas(int limit) {
+            if (dirty || limit != stopLemmasLimit) {
+                stopLemmas = Set.copyOf(counter.top(limit));
+                stopLemmasLimit = limit;
+                dirty = false;
+            }
+            return stopLemmas;
+        }
+    }
+
+    private record GlobalLemmasCount(long generation, int lemmasCount) {
+
+    }
+}
@@ -0,0 +1,173 @@
+package searchengine.services.components;
+
+import java.util.Arrays;
+
+/**
+ * Ограниченная куча лучших страниц по абсолютной релевантности. Хранит не более {@code capacity}
+ * пар (страница, ранг) в примитивных массивах, попутно считая общее число найденных страниц и
+ * максимальный ранг, необходимый для нормализации. Массивы растут по мере заполнения, поэтому
+ * большая глубина выдачи не резервирует память под страницы, которых не нашлось.
+ */
+public final class TopPagesCollector {
+
+    private static final int INITIAL_SIZE = 64;
+
+    private final int capacity;
+    private long[] pageIds;
+    private float[] scores;
+    private int size;
+    private int totalCount;
+    private float maxScore;
+    private SearchCursor after;
+
+    public TopPagesCollector(int capacity) {
+        this.capacity = Math.max(0, capacity);
+        this.pageIds = new long[Math.min(this.capacity, INITIAL_SIZE)];
+        this.scores = new float[pageIds.length];
+    }
+
+    /**
+     * Метод ограничивает отбор страницами, идущими в выдаче после курсора. Страницы до курсора
+     * по-прежнему учитываются в общем числе и максимальном ранге.
+     */
+    public void startAfter(SearchCursor cursor) {
+        this.after = cursor;
+    }
+
+    public void offer(long pageId, float score) {
+        totalCount++;
+        if (score > maxScore) {
+            maxScore = score;
+        }
+        if (after == null || after.precedes(score, pageId)) {
+            insert(pageId, score);
+        }
+    }
+
+    /**
+     * Метод объединяет с коллектором лучшие страницы, отобранные по другому сайту.
+     *
+     * @param rankedPages лучшие страницы сайта с его счётчиками
+     */
+    public void merge(RankedPages rankedPages) {
+        totalCount += rankedPages.totalCount();
+        if (rankedPages.maxScore() > maxScore) {
+            maxScore = rankedPages.maxScore();
+        }
+        for (int i = 0; i < rankedPages.size(); i++) {
+            if (!insert(rankedPages.pageIds()[i], rankedPages.scores()[i])) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return {@code false}, если страница хуже худшей из уже отобранных и не попала в кучу
+     */
+    private boolean insert(long pageId, float score) {
+        if (capacity == 0) {
+            return false;
+        }
+        if (size < capacity) {
+            if (size == pageIds.length) {
+                grow();
+            }
+            pageIds[size] = pageId;
+            scores[size] = score;
+            siftUp(size++);
+            return true;
+        }
+        if (isBetter(score, pageId, scores[0], pageIds[0])) {
+            pageIds[0] = pageId;
+            scores[0] = score;
+            siftDown(0);
+            return true;
+        }
+        return false;
+    }
+
+    private void grow() {
+        int length = (int) Math.min(capacity, Math.max(1L, pageIds.length * 2L));
+        pageIds = Arrays.copyOf(pageIds, length);
+        scores = Arrays.copyOf(scores, length);
+    }
+
+    public int getTotalCount() {
+        return totalCount;
+    }
+
+    public float getMaxScore() {
+        return maxScore;
+    }
+
+    /**
+     * Метод извлекает накопленные страницы в порядке убывания ранга. Коллектор после вызова пуст.
+     *
+     * @return идентификаторы страниц и их ранги, от лучшей к худшей
+     */
+    public RankedPages drainSorted() {
+        int count = size;
+        long[] sortedPageIds = new long[count];
+        float[] sortedScores = new float[count];
+        for (int i = count - 1; i >= 0; i--) {
+            sortedPageIds[i] = pageIds[0];
+            sortedScores[i] = scores[0];
+            size--;
+            pageIds[0] = pageIds[size];
+            scores[0] = scores[size];
+            siftDown(0);
+        }
+        return new RankedPages(sortedPageIds, sortedScores, totalCount, maxScore);
+    }
+
+    /**
+     * Страница лучше, если её ранг выше; при равных рангах выше стоит страница с меньшим id, чтобы
+     * порядок выдачи был стабильным между запросами.
+     */
+    static boolean isBetter(float score, long pageId, float otherScore, long otherPageId) {
+        if (score != otherScore) {
+            return score > otherScore;
+        }
+        return pageId < otherPageId;
+    }
+
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!isBetter(scores[parent], pageIds[parent], scores[index], pageIds[index])) {
+                return;
+            }
+            swap(index, parent);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int index) {
+        while (true) {
+            int left = 2 * index + 1;
+            if (left >= size) {
+                return;
+            }
+            int worst = left;
+            int right = left + 1;
+            if (right < size
+                && isBetter(scores[worst], pageIds[worst], scores[right], pageIds[right])) {
+                worst = right;
+            }
+            if (!isBetter(scores[index], pageIds[index], scores[worst], pageIds[worst])) {
+                return;
+            }
+            swap(index, worst);
+            index = worst;
+        }
+    }
+
+    private void swap(int i, int j) {
+        long pageId = pageIds[i];
+        pageIds[i] = pageIds[j];
+        pageIds[j] = pageId;
+        float score = scores[i];
+        scores[i] = scores[j];
+        scores[j] = score;
+    }
+}
@@ -0,0 +1,311 @@
+package searchengine.services.components;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import searchengine.config.CrawlerConfiguration;
+
+/**
+ * Множество адресов, уже поставленных в обход одного сайта. Хранит не строки, а 64-битные
+ * отпечатки путей в открытой хеш-таблице примитивов, разбитой на сегменты со своими
+ * блокировками. Для очень больших сайтов вместо таблицы можно включить фильтр Блума: он
+ * занимает фиксированный объём памяти, но с заданной вероятностью принимает новый адрес за
+ * посещённый, и такая страница пропускается. Повторно адрес не выдаётся ни в одном режиме.
+ *
+ * <p>Кроме отпечатков хранятся пути ещё не обработанных страниц с их глубиной. Вместе они
+ * образуют состояние обхода, которое {@link #snapshot()} сохраняет согласованно: выдача и
+ * завершение адресов приостанавливаются только на время копирования массивов состояния, а
+ * сериализация копии выполняется без блокировки.
+ */
+public final class UrlFrontier {
+
+    private static final int STRIPES = 64;
+    private static final long EMPTY = 0L;
+
+    private final Object[] locks = new Object[STRIPES];
+    private final FingerprintSet[] exactSets;
+    private final AtomicLongArray bloomBits;
+    private final long bloomBitCount;
+    private final int bloomHashCount;
+    private final AtomicInteger size = new AtomicInteger();
+    private final Map<String, Integer> pending = new ConcurrentHashMap<>();
+    private final ReadWriteLock snapshotLock = new ReentrantReadWriteLock();
+
+    private UrlFrontier(long bloomBitCount, int bloomHashCount) {
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new Object();
+        }
+        if (bloomBitCount > 0) {
+            this.bloomBitCount = bloomBitCount;
+            this.bloomHashCount = bloomHashCount;
+            this.bloomBits = new AtomicLongArray(Math.toIntExact(bloomBitCount / Long.SIZE));
+            this.exactSets = null;
+        } else {
+            this.bloomBitCount = 0;
+            this.bloomHashCount = 0;
+            this.bloomBits = null;
+            this.exactSets = new FingerprintSet[STRIPES];
+            for (int i = 0; i < STRIPES; i++) {
+                exactSets[i] = new FingerprintSet();
+            }
+        }
+    }
+
+    public static UrlFrontier create(CrawlerConfiguration.Frontier settings) {
+        if (!settings.isBloomFilter()) {
+            return new UrlFrontier(0, 0);
+        }
+        long expected = Math.max(1, settings.getExpectedUrls());
+        double ln2 = Math.log(2);
+        long bitCount = (long) Math.ceil(-expected * Math.log(settings.getFalsePositiveRate())
+            / (ln2 * ln2));
+        bitCount = Math.max(Long.SIZE, (bitCount + Long.SIZE - 1) / Long.SIZE * Long.SIZE);
+        int hashCount = Math.max(1, (int) Math.round((double) bitCount / expected * ln2));
+        return new UrlFrontier(bitCount, hashCount);
+    }
+
+    /**
+     * Метод отмечает путь как поставленный в обход и запоминает его до вызова
+     * {@link #complete(String)}.
+     *
+     * @param path  путь страницы относительно адреса сайта
+     * @param depth число переходов от главной страницы
+     * @return {@code true}, если путь встретился впервые и страницу нужно обойти
+     */
+    public boolean claim(String path, int depth) {
+        snapshotLock.readLock().lock();
+        try {
+            boolean added = add(fingerprint(path));
+            if (added) {
+                pending.put(path, depth);
+            }
+            return added;
+        } finally {
+            snapshotLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Метод отмечает путь уже сохранённой страницы, которую обходить не нужно.
+     */
+    public void markVisited(String path) {
+        snapshotLock.readLock().lock();
+        try {
+            add(fingerprint(path));
+        } finally {
+            snapshotLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Метод отмечает, что страница обработана и при возобновлении обхода не понадобится.
+     */
+    public void complete(String path) {
+        snapshotLock.readLock().lock();
+        try {
+            pending.remove(path);
+        } finally {
+            snapshotLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return число принятых адресов
+     */
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * @return пути необработанных страниц и их глубина
+     */
+    public Map<String, Integer> getPending() {
+        return Map.copyOf(pending);
+    }
+
+    /**
+     * Метод сохраняет отпечатки и необработанные пути в массив байт. Под блокировкой снимка
+     * состояние только копируется, поэтому обход ждёт копирования массивов, а не записи.
+     */
+    public byte[] snapshot() throws IOException {
+        int copiedSize;
+        long[][] copiedSets = null;
+        long[] copiedBloomBits = null;
+        Map<String, Integer> copiedPending;
+        snapshotLock.writeLock().lock();
+        try {
+            copiedSize = size.get();
+            if (exactSets != null) {
+                copiedSets = new long[STRIPES][];
+                for (int i = 0; i < STRIPES; i++) {
+                    copiedSets[i] = exactSets[i].table.clone();
+                }
+            } else {
+                copiedBloomBits = new long[bloomBits.length()];
+                for (int i = 0; i < copiedBloomBits.length; i++) {
+                    copiedBloomBits[i] = bloomBits.get(i);
+                }
+            }
+            copiedPending = new HashMap<>(pending);
+        } finally {
+            snapshotLock.writeLock().unlock();
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(bloomBitCount);
+        out.writeInt(bloomHashCount);
+        out.writeInt(copiedSize);
+        if (copiedSets != null) {
+            for (long[] table : copiedSets) {
+                for (long fingerprint : table) {
+                    if (fingerprint != EMPTY) {
+                        out.writeLong(fingerprint);
+                    }
+                }
+            }
+        } else {
+            for (long word : copiedBloomBits) {
+                out.writeLong(word);
+            }
+        }
+        out.writeInt(copiedPending.size());
+        for (Map.Entry<String, Integer> entry : copiedPending.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeInt(entry.getValue());
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Метод восстанавливает состояние из {@link #snapshot()}. Режим хранения берётся из снимка,
+     * а не из текущих настроек.
+     */
+    public static UrlFrontier restore(byte[] snapshot) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(snapshot));
+        UrlFrontier frontier = new UrlFrontier(in.readLong(), in.readInt());
+        int size = in.readInt();
+        if (frontier.exactSets != null) {
+            for (int i = 0; i < size; i++) {
+                frontier.add(in.readLong());
+            }
+        } else {
+            for (int i = 0; i < frontier.bloomBits.length(); i++) {
+                frontier.bloomBits.set(i, in.readLong());
+            }
+            frontier.size.set(size);
+        }
+        int pendingCount = in.readInt();
+        for (int i = 0; i < pendingCount; i++) {
+            frontier.pending.put(in.readUTF(), in.readInt());
+        }
+        return frontier;
+    }
+
+    private boolean add(long fingerprint) {
+        int stripe = (int) (fingerprint >>> 58);
+        boolean added;
+        synchronized (locks[stripe]) {
+            added = exactSets != null ? exactSets[stripe].add(fingerprint)
+                : addToBloomFilter(fingerprint);
+        }
+        if (added) {
+            size.incrementAndGet();
+        }
+        return added;
+    }
+
+    /**
+     * 64-битный отпечаток пути: FNV-1a по символам строки с перемешиванием из MurmurHash3.
+     */
+    static long fingerprint(String path) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < path.length(); i++) {
+            hash ^= path.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash = mix(hash);
+        return hash == EMPTY ? 1 : hash;
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * Метод устанавливает биты отпечатка; позиции получены двойным хешированием.
+     *
+     * @return {@code true}, если хотя бы один бит был сброшен
+     */
+    private boolean addToBloomFilter(long fingerprint) {
+        long step = mix(fingerprint ^ 0x9e3779b97f4a7c15L) | 1;
+        boolean changed = false;
+        for (int i = 0; i < bloomHashCount; i++) {
+            long bit = Long.remainderUnsigned(fingerprint + i * step, bloomBitCount);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long previous = bloomBits.getAndUpdate(word, value -> value | mask);
+            changed |= (previous & mask) == 0;
+        }
+        return changed;
+    }
+
+    /**
+     * Открытая хеш-таблица отпечатков с линейным пробированием. Доступ синхронизирует
+     * {@link UrlFrontier}.
+     */
+    private static final class FingerprintSet {
+
+        private long[] table = new long[64];
+        private int count;
+
+        private boolean add(long fingerprint) {
+            if (count * 4 >= table.length * 3) {
+                resize();
+            }
+            if (!insert(table, fingerprint)) {
+                return false;
+            }
+            count++;
+            return true;
+        }
+
+        private void resize() {
+            long[] resized = new long[table.length * 2];
+            for (long fingerprint : table) {
+                if (fingerprint != EMPTY) {
+                    insert(resized, fingerprint);
+                }
+            }
+            table = resized;
+        }
+
+        private static boolean insert(long[] table, long fingerprint) {
+            int mask = table.length - 1;
+            int slot = (int) mix(fingerprint) & mask;
+            while (table[slot] != EMPTY) {
+                if (table[slot] == fingerprint) {
+                    return false;
+                }
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = fingerprint;
+            return true;
+        }
+    }
+}
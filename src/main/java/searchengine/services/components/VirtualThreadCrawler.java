@@ -0,0 +1,114 @@
+package searchengine.services.components;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import searchengine.exceptions.IndexingStopUserException;
+
+/**
+ * Обход сайтов в виртуальных потоках. Для каждого сайта открывается своя область выполнения со
+ * своим исполнителем: каждая страница обрабатывается в отдельном виртуальном потоке, найденные
+ * на ней ссылки отправляются в ту же область. Область завершается, когда обработаны все страницы,
+ * или при первой ошибке, прерывая остальные потоки сайта. Число одновременных загрузок с хоста
+ * ограничивает {@link PolitenessScheduler}, обращений к базе данных —
+ * {@link DatabaseAccessLimiter}.
+ */
+@Slf4j
+@Component
+public class VirtualThreadCrawler {
+
+    private final Set<SiteScope> activeScopes = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Метод открывает область обхода сайта. С этого момента индексация считается запущенной.
+     */
+    public SiteScope open(String siteName) {
+        SiteScope scope = new SiteScope(siteName);
+        activeScopes.add(scope);
+        return scope;
+    }
+
+    public boolean isRunning() {
+        return !activeScopes.isEmpty();
+    }
+
+    public void stopAll() {
+        for (SiteScope scope : activeScopes) {
+            scope.cancel(new IndexingStopUserException());
+        }
+    }
+
+    public final class SiteScope {
+
+        private final ExecutorService executor;
+        private final AtomicLong pending = new AtomicLong();
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        private SiteScope(String siteName) {
+            this.executor = Executors.newThreadPerTaskExecutor(
+                Thread.ofVirtual().name("crawl-" + siteName + "-", 0).factory());
+        }
+
+        /**
+         * Метод обходит сайт, начиная с переданной страницы, и возвращает управление, когда
+         * завершены все потоки сайта.
+         *
+         * @throws RuntimeException первая ошибка обхода или {@link IndexingStopUserException}
+         */
+        public void run(PageParser rootParser) {
+            try (executor) {
+                fork(rootParser);
+                done.join();
+            } catch (CompletionException ex) {
+                if (ex.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                throw ex;
+            } finally {
+                activeScopes.remove(this);
+            }
+        }
+
+        private void fork(PageParser parser) {
+            pending.incrementAndGet();
+            try {
+                executor.execute(() -> crawl(parser));
+            } catch (RejectedExecutionException ex) {
+                finishTask();
+            }
+        }
+
+        private void crawl(PageParser parser) {
+            try {
+                List<PageParser> subtasks = parser.crawlPage();
+                subtasks.forEach(this::fork);
+            } catch (RuntimeException ex) {
+                cancel(ex);
+            } finally {
+                finishTask();
+            }
+        }
+
+        private void finishTask() {
+            if (pending.decrementAndGet() == 0) {
+                done.complete(null);
+            }
+        }
+
+        private void cancel(RuntimeException cause) {
+            if (done.completeExceptionally(cause)) {
+                log.info("Обход прерван: {}", cause.getMessage());
+                activeScopes.remove(this);
+                executor.shutdownNow();
+            }
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package searchengine.services.components;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.morphology.LuceneMorphology;
+import org.springframework.stereotype.Component;
+import searchengine.config.CrawlerConfiguration;
+
+/**
+ * Общий кэш разбора словоформ перед {@link LuceneMorphology}. Для словоформы хранится её
+ * нормальная форма и признак служебной части речи, поэтому повторные словоформы не требуют
+ * обращений к словарю ни при индексации, ни при построении сниппетов. Частые словоформы
+ * составляют большую часть текста, и кэш небольшого объёма обслуживает почти все обращения.
+ *
+ * <p>Кэш разбит на сегменты со своими блокировками; в каждом сегменте вытесняются давно не
+ * использовавшиеся словоформы, а всего хранится не больше {@code word-form-cache-capacity}.
+ */
+@Slf4j
+@Component
+public class WordFormCache {
+
+    private static final int SEGMENTS = 16;
+    private static final Pattern WORD_FORMS_EXCLUDE_PATTERN =
+        Pattern.compile(".*\\s(СОЮЗ|МЕЖД|ПРЕДЛ|ЧАСТ)\\s?.*");
+
+    private final LuceneMorphology luceneMorphology;
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public WordFormCache(LuceneMorphology luceneMorphology,
+        CrawlerConfiguration crawlerConfiguration) {
+        this.luceneMorphology = luceneMorphology;
+        int segmentCapacity = Math.max(1,
+            crawlerConfiguration.getWordFormCacheCapacity() / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(segmentCapacity);
+        }
+    }
+
+    /**
+     * @param word словоформа в нижнем регистре из русских букв
+     * @return нормальная форма и признак служебной части речи
+     */
+    public WordForm lookup(String word) {
+        Segment segment = segments[Math.floorMod(word.hashCode(), SEGMENTS)];
+        WordForm wordForm = segment.get(word);
+        if (wordForm != null) {
+            hits.increment();
+            return wordForm;
+        }
+        misses.increment();
+        wordForm = load(word);
+        segment.put(word, wordForm);
+        return wordForm;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return доля обращений, обслуженных кэшем
+     */
+    public double getHitRate() {
+        long hitCount = getHits();
+        long total = hitCount + getMisses();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    public void logStatistics() {
+        log.info("Кэш словоформ: {} словоформ, попаданий {}, промахов {}, доля попаданий {}%",
+            size(), getHits(), getMisses(), Math.round(getHitRate() * 1000) / 10.0);
+    }
+
+    private WordForm load(String word) {
+        List<String> morphInfo = luceneMorphology.getMorphInfo(word);
+        boolean excluded = WORD_FORMS_EXCLUDE_PATTERN.matcher(morphInfo.getFirst()).matches();
+        List<String> normalForms = luceneMorphology.getNormalForms(word);
+        return new WordForm(normalForms.isEmpty() ? null : normalForms.getFirst(), excluded);
+    }
+
+    /**
+     * Разбор словоформы.
+     *
+     * @param lemma    нормальная форма или {@code null}, если словарь её не знает
+     * @param excluded словоформа — союз, междометие, предлог или частица
+     */
+    public record WordForm(String lemma, boolean excluded) {
+
+    }
+
+    /**
+     * Сегмент кэша: отображение с порядком обращений, вытесняющее самую давнюю словоформу.
+     */
+    private static final class Segment {
+
+        private final Map<String, WordForm> entries;
+
+        private Segment(int capacity) {
+            this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, WordForm> eldest) {
+                    return size() > capacity;
+                }
+            };
+        }
+
+        private synchronized WordForm get(String word) {
+            return entries.get(word);
+        }
+
+        private synchronized void put(String word, WordForm wordForm) {
+            entries.put(word, wordForm);
+        }
+
+        private synchronized int size() {
+            return entries.size();
+        }
+    }
+}
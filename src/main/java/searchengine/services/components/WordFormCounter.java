@@ -0,0 +1,249 @@
+package searchengine.services.components;
+
+import java.util.Arrays;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Однопроходный разбор текста страницы на русские словоформы с подсчётом вхождений. В HTML-коде
+ * разметка, комментарии и содержимое {@code <script>} и {@code <style>} пропускаются; простой
+ * текст разбирается целиком, и символ {@code <} в нём — обычный разделитель. Буквы приводятся к
+ * нижнему регистру по ходу чтения, а любой символ, кроме русской буквы, разделяет словоформы.
+ *
+ * <p>Промежуточные строки не создаются: символы словоформы копируются в общий массив, а
+ * повторная словоформа находится в открытой хеш-таблице сравнением символов. Строка создаётся
+ * один раз для каждой различной словоформы, когда счётчик обходят в {@link #forEach}.
+ */
+final class WordFormCounter {
+
+    private static final int EMPTY = -1;
+    private static final String[] RAW_TEXT_ELEMENTS = {"script", "style"};
+
+    private char[] token = new char[32];
+    private int tokenLength;
+    private int tokenHash;
+    private char[] chars = new char[1024];
+    private int charsUsed;
+    private int[] offsets = new int[64];
+    private int[] lengths = new int[64];
+    private int[] hashes = new int[64];
+    private int[] counts = new int[64];
+    private int size;
+    private int[] slots = newSlots(128);
+    private final boolean recordTokens;
+    private final boolean markup;
+    private int tokenStart;
+    private int[] tokenEntries;
+    private int[] tokenOffsets;
+    private int tokenCount;
+
+    private WordFormCounter(boolean recordTokens, boolean markup) {
+        this.recordTokens = recordTokens;
+        this.markup = markup;
+        if (recordTokens) {
+            tokenEntries = new int[256];
+            tokenOffsets = new int[256];
+        }
+    }
+
+    /**
+     * @param html HTML-код страницы или простой текст
+     */
+    static WordFormCounter count(String html) {
+        WordFormCounter counter = new WordFormCounter(false, true);
+        counter.scan(html);
+        return counter;
+    }
+
+    /**
+     * Метод дополнительно запоминает каждую словоформу текста по порядку вместе со смещением её
+     * первого символа. Разметка не пропускается: смещения относятся к видимому тексту страницы
+     * или к запросу, где {@code <} встречается как обычный символ.
+     *
+     * @param text простой текст
+     */
+    static WordFormCounter countWithTokens(String text) {
+        WordFormCounter counter = new WordFormCounter(true, false);
+        counter.scan(text);
+        return counter;
+    }
+
+    int size() {
+        return size;
+    }
+
+    String wordForm(int entry) {
+        return new String(chars, offsets[entry], lengths[entry]);
+    }
+
+    int tokenCount() {
+        return tokenCount;
+    }
+
+    /**
+     * @return номер различной словоформы для {@link #wordForm(int)}
+     */
+    int tokenEntry(int token) {
+        return tokenEntries[token];
+    }
+
+    int tokenOffset(int token) {
+        return tokenOffsets[token];
+    }
+
+    /**
+     * Метод передаёт каждую различную словоформу и число её вхождений.
+     */
+    void forEach(ObjIntConsumer<String> action) {
+        for (int i = 0; i < size; i++) {
+            action.accept(wordForm(i), counts[i]);
+        }
+    }
+
+    private void scan(String html) {
+        int length = html.length();
+        int i = 0;
+        while (i < length) {
+            char c = html.charAt(i);
+            if (c == '<' && markup) {
+                endToken();
+                i = skipMarkup(html, i);
+                continue;
+            }
+            char lower = Character.toLowerCase(c);
+            if (lower >= 'а' && lower <= 'я' || lower == 'ё') {
+                if (tokenLength == 0) {
+                    tokenStart = i;
+                }
+                appendToToken(lower);
+            } else {
+                endToken();
+            }
+            i++;
+        }
+        endToken();
+    }
+
+    /**
+     * @return позиция после комментария, тега или элемента {@code script}/{@code style},
+     * начинающегося в {@code start}
+     */
+    private static int skipMarkup(String html, int start) {
+        if (html.startsWith("<!--", start)) {
+            int end = html.indexOf("-->", start + 4);
+            return end < 0 ? html.length() : end + 3;
+        }
+        int end = html.indexOf('>', start);
+        if (end < 0) {
+            return html.length();
+        }
+        for (String rawTextElement : RAW_TEXT_ELEMENTS) {
+            if (isTagName(html, start + 1, rawTextElement)) {
+                return skipToClosingTag(html, end + 1, rawTextElement);
+            }
+        }
+        return end + 1;
+    }
+
+    private static int skipToClosingTag(String html, int from, String name) {
+        int position = from;
+        while ((position = html.indexOf("</", position)) >= 0) {
+            if (isTagName(html, position + 2, name)) {
+                int end = html.indexOf('>', position);
+                return end < 0 ? html.length() : end + 1;
+            }
+            position += 2;
+        }
+        return html.length();
+    }
+
+    private static boolean isTagName(String html, int offset, String name) {
+        int end = offset + name.length();
+        return html.regionMatches(true, offset, name, 0, name.length())
+            && (end == html.length() || !Character.isLetterOrDigit(html.charAt(end)));
+    }
+
+    private void appendToToken(char c) {
+        if (tokenLength == token.length) {
+            token = Arrays.copyOf(token, tokenLength * 2);
+        }
+        token[tokenLength++] = c;
+        tokenHash = 31 * tokenHash + c;
+    }
+
+    private void endToken() {
+        if (tokenLength > 0) {
+            int entry = add();
+            if (recordTokens) {
+                recordToken(entry);
+            }
+            tokenLength = 0;
+            tokenHash = 0;
+        }
+    }
+
+    private void recordToken(int entry) {
+        if (tokenCount == tokenEntries.length) {
+            tokenEntries = Arrays.copyOf(tokenEntries, tokenCount * 2);
+            tokenOffsets = Arrays.copyOf(tokenOffsets, tokenCount * 2);
+        }
+        tokenEntries[tokenCount] = entry;
+        tokenOffsets[tokenCount] = tokenStart;
+        tokenCount++;
+    }
+
+    /**
+     * @return номер словоформы в таблице
+     */
+    private int add() {
+        if (size * 4 >= slots.length * 3) {
+            resize();
+        }
+        int mask = slots.length - 1;
+        int slot = (tokenHash ^ tokenHash >>> 16) & mask;
+        while (slots[slot] != EMPTY) {
+            int entry = slots[slot];
+            if (hashes[entry] == tokenHash && Arrays.equals(chars, offsets[entry],
+                offsets[entry] + lengths[entry], token, 0, tokenLength)) {
+                counts[entry]++;
+                return entry;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (size == offsets.length) {
+            int capacity = size * 2;
+            offsets = Arrays.copyOf(offsets, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            hashes = Arrays.copyOf(hashes, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+        }
+        if (charsUsed + tokenLength > chars.length) {
+            chars = Arrays.copyOf(chars, Math.max(chars.length * 2, charsUsed + tokenLength));
+        }
+        System.arraycopy(token, 0, chars, charsUsed, tokenLength);
+        offsets[size] = charsUsed;
+        lengths[size] = tokenLength;
+        hashes[size] = tokenHash;
+        counts[size] = 1;
+        charsUsed += tokenLength;
+        slots[slot] = size;
+        return size++;
+    }
+
+    private void resize() {
+        slots = newSlots(slots.length * 2);
+        int mask = slots.length - 1;
+        for (int entry = 0; entry < size; entry++) {
+            int slot = (hashes[entry] ^ hashes[entry] >>> 16) & mask;
+            while (slots[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = entry;
+        }
+    }
+
+    private static int[] newSlots(int capacity) {
+        int[] slots = new int[capacity];
+        Arrays.fill(slots, EMPTY);
+        return slots;
+    }
+}
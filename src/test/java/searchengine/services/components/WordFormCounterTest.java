@@ -0,0 +1,50 @@
+package searchengine.services.components;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class WordFormCounterTest {
+
+    @Test
+    void countWithTokensKeepsWordsAfterLessThanSign() {
+        String text = "цена < 100 руб. и доставка";
+
+        WordFormCounter counter = WordFormCounter.countWithTokens(text);
+
+        assertEquals(List.of("цена", "руб", "и", "доставка"), tokens(counter));
+        assertEquals(text.indexOf("руб"), counter.tokenOffset(1));
+        assertEquals(text.indexOf("доставка"), counter.tokenOffset(3));
+    }
+
+    @Test
+    void countWithTokensDoesNotSkipTagLikeText() {
+        String text = "меньше <b>больше</b> <script>код</script>";
+
+        WordFormCounter counter = WordFormCounter.countWithTokens(text);
+
+        assertEquals(List.of("меньше", "больше", "код"), tokens(counter));
+    }
+
+    @Test
+    void countSkipsMarkupInHtml() {
+        String html = "<p class=\"цена\">Цена</p><!-- скрыто --><script>код</script>товара";
+
+        Map<String, Integer> counts = new HashMap<>();
+        WordFormCounter.count(html).forEach(counts::put);
+
+        assertEquals(Map.of("цена", 1, "товара", 1), counts);
+    }
+
+    private static List<String> tokens(WordFormCounter counter) {
+        List<String> tokens = new ArrayList<>();
+        for (int token = 0; token < counter.tokenCount(); token++) {
+            tokens.add(counter.wordForm(counter.tokenEntry(token)));
+        }
+        return tokens;
+    }
+}